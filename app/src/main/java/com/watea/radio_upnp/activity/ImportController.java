@@ -25,7 +25,9 @@ package com.watea.radio_upnp.activity;
 
 import static com.watea.radio_upnp.service.ExportDevice.EXPORTER_DEVICE_TYPE;
 import static com.watea.radio_upnp.service.Exporter.ACTION_GET_EXPORT;
+import static com.watea.radio_upnp.service.Exporter.ACTION_GET_MANIFEST;
 
+import android.database.sqlite.SQLiteException;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
@@ -35,6 +37,7 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 
 import com.watea.radio_upnp.R;
+import com.watea.radio_upnp.model.RadioExport;
 import com.watea.radio_upnp.model.RadioLibrary;
 import com.watea.radio_upnp.service.ExportDevice;
 import com.watea.radio_upnp.service.Exporter;
@@ -44,18 +47,28 @@ import org.fourthline.cling.controlpoint.ActionCallback;
 import org.fourthline.cling.model.action.ActionInvocation;
 import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.model.message.header.DeviceTypeHeader;
+import org.fourthline.cling.model.meta.Action;
 import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.Service;
 import org.fourthline.cling.model.types.UDAServiceId;
 import org.fourthline.cling.registry.DefaultRegistryListener;
 import org.fourthline.cling.registry.Registry;
 import org.fourthline.cling.registry.RegistryListener;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class ImportController {
   private static final String LOG_TAG = ImportController.class.getName();
   private static final int IMPORT_DELAY = 4000; // ms
   private static final DeviceTypeHeader EXPORTER_DEVICE_TYPE_HEADER =
     new DeviceTypeHeader(EXPORTER_DEVICE_TYPE);
   private static final Handler handler = new Handler(Looper.getMainLooper());
+  // Import result when export could not be read
+  private static final int IMPORT_FAILED = -2;
+  // Network fetches are kept off database writer
+  private static final ExecutorService importExecutor = Executors.newSingleThreadExecutor();
   @NonNull
   private final MainActivity mainActivity;
   // <HMI assets
@@ -145,11 +158,56 @@ public class ImportController {
       mainActivity.tell(R.string.service_not_available);
       return;
     }
+    final Service<?, ?> service =
+      remoteDevice.findService(new UDAServiceId(Exporter.EXPORTER_SERVICE));
+    // Streamed export, if remote supports it
+    final Action<?> action = service.getAction(ACTION_GET_MANIFEST);
+    if (action == null) {
+      upnpLegacyImport(androidUpnpService, service);
+      return;
+    }
+    // Executes asynchronous in the background
+    androidUpnpService.getControlPoint().execute(
+      new ActionCallback(new ActionInvocation<>(action)) {
+        @Override
+        public void success(ActionInvocation actionInvocation) {
+          Log.d(LOG_TAG, "Manifest action success");
+          final String manifest = actionInvocation.getOutput(Exporter.MANIFEST).toString();
+          final RadioLibrary radioLibrary = mainActivity.getRadioLibrary();
+          if ((radioLibrary == null) || !radioLibrary.isOpen()) {
+            handler.post(() -> mainActivity.tell(R.string.import_failed));
+            return;
+          }
+          // Import is blocking, radios are written on database writer by chunks
+          importExecutor.execute(() -> {
+            final int result = importFrom(manifest, radioLibrary);
+            handler.post(() -> {
+              if (result == RadioExport.UNSUPPORTED) {
+                upnpLegacyImport(androidUpnpService, service);
+              } else {
+                // Nothing to synchronize is also a success
+                mainActivity.tell(
+                  (result == IMPORT_FAILED) ? R.string.import_failed : R.string.import_successful);
+              }
+            });
+          });
+        }
+
+        @Override
+        public void failure(
+          ActionInvocation actionInvocation, UpnpResponse operation, String defaultMsg) {
+          Log.d(LOG_TAG, "Manifest action error: " + defaultMsg);
+          mainActivity.tell(R.string.import_action_failed);
+        }
+      });
+  }
+
+  // Whole library in one string
+  private void upnpLegacyImport(
+    @NonNull AndroidUpnpService androidUpnpService, @NonNull Service<?, ?> service) {
     // Build call
-    final ActionInvocation<?> actionInvocation = new ActionInvocation<>(
-      remoteDevice
-        .findService(new UDAServiceId(Exporter.EXPORTER_SERVICE))
-        .getAction(ACTION_GET_EXPORT));
+    final ActionInvocation<?> actionInvocation =
+      new ActionInvocation<>(service.getAction(ACTION_GET_EXPORT));
     // Executes asynchronous in the background
     androidUpnpService.getControlPoint().execute(
       new ActionCallback(actionInvocation) {
@@ -157,13 +215,14 @@ public class ImportController {
         public void success(ActionInvocation actionInvocation) {
           Log.d(LOG_TAG, "Export action success");
           final String export = actionInvocation.getOutput(Exporter.EXPORT).toString();
-          // Must be called on main thread for thread safety
-          handler.post(() -> {
-            final RadioLibrary radioLibrary = mainActivity.getRadioLibrary();
-            final boolean tell =
-              (radioLibrary != null) && radioLibrary.isOpen() && radioLibrary.importFrom(export);
-            mainActivity.tell(tell ? R.string.import_successful : R.string.import_failed);
-          });
+          final RadioLibrary radioLibrary = mainActivity.getRadioLibrary();
+          if ((radioLibrary == null) || !radioLibrary.isOpen()) {
+            handler.post(() -> mainActivity.tell(R.string.import_failed));
+            return;
+          }
+          // Run on database writer, closed library is told as failure
+          radioLibrary.importFromAsync(export, isImported ->
+            mainActivity.tell(isImported ? R.string.import_successful : R.string.import_failed));
         }
 
         @Override
@@ -174,4 +233,14 @@ public class ImportController {
         }
       });
   }
+
+  private static int importFrom(@NonNull String manifest, @NonNull RadioLibrary radioLibrary) {
+    try {
+      return RadioExport.importFrom(manifest, radioLibrary);
+    } catch (IOException | SQLiteException | IllegalStateException exception) {
+      // Library may have been closed meanwhile
+      Log.d(LOG_TAG, "Export read error", exception);
+      return IMPORT_FAILED;
+    }
+  }
 }
\ No newline at end of file
@@ -42,13 +42,23 @@ public class ItemAddFragment extends ItemFragment {
   @Override
   public boolean onOptionsItemSelected(@NonNull MenuItem item) {
     if (!super.onOptionsItemSelected(item)) {
-      boolean result = (urlWatcher.url == null);
-      try {
-        assert getRadioLibrary() != null;
-        result = !result && getRadioLibrary().add(
-          new Radio(getRadioName(), urlWatcher.url, webPageWatcher.url, false, getIcon()));
-      } catch (Exception exception) {
-        Log.e(LOG_TAG, "onOptionsItemSelected: internal failure", exception);
+      boolean result = false;
+      if (urlWatcher.url != null) {
+        try {
+          assert getRadioLibrary() != null;
+          // Radio is added on database writer
+          final MainActivity mainActivity = getMainActivity();
+          getRadioLibrary().addAsync(
+            new Radio(getRadioName(), urlWatcher.url, webPageWatcher.url, false, getIcon()),
+            isOk -> {
+              if (!isOk) {
+                mainActivity.tell(R.string.radio_database_update_failed);
+              }
+            });
+          result = true;
+        } catch (Exception exception) {
+          Log.e(LOG_TAG, "onOptionsItemSelected: internal failure", exception);
+        }
       }
       if (!result) {
         tell(R.string.radio_database_update_failed);
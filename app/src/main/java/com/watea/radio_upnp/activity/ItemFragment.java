@@ -60,7 +60,6 @@ import com.watea.radio_upnp.adapter.PlayerAdapter;
 import com.watea.radio_upnp.model.Radio;
 import com.watea.radio_upnp.service.RadioURL;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
@@ -441,11 +440,10 @@ public abstract class ItemFragment extends MainActivityFragment {
     protected void onSearch() {
       if (radios.isEmpty()) {
         try {
-          final Element search = Jsoup
-            .connect(DAR_FM_PLAYLIST_REQUEST +
-              getRadioName().replace(" ", SPACE_FOR_SEARCH) + getCountrySearch() +
-              DAR_FM_PAGESIZE + DAR_FM_PARTNER_TOKEN)
-            .get();
+          final Element search = new RadioURL(new URL(DAR_FM_PLAYLIST_REQUEST +
+            getRadioName().replace(" ", SPACE_FOR_SEARCH) + getCountrySearch() +
+            DAR_FM_PAGESIZE + DAR_FM_PARTNER_TOKEN))
+            .getDocument();
           // Parse data
           for (Element station : search.getElementsByTag("station")) {
             // As stated, may fail
@@ -466,9 +464,9 @@ public abstract class ItemFragment extends MainActivityFragment {
       if (radios.size() == 1) {
         final Map<String, String> foundRadio = radios.get(0);
         try {
-          final Element station = Jsoup
-            .connect(DAR_FM_STATIONS_REQUEST + foundRadio.get(DAR_FM_ID) + DAR_FM_PARTNER_TOKEN)
-            .get();
+          final Element station = new RadioURL(new URL(
+            DAR_FM_STATIONS_REQUEST + foundRadio.get(DAR_FM_ID) + DAR_FM_PARTNER_TOKEN))
+            .getDocument();
           foundRadio.put(DAR_FM_WEB_PAGE, extractValue(station, "websiteurl"));
           // Order matters
           foundIcon = new RadioURL(new URL(extractValue(station, "imageurl"))).getBitmap();
@@ -81,20 +81,22 @@ public class ItemModifyFragment extends ItemFragment {
       if (getRadioLibrary().isCurrentRadio(radio)) {
         tell(R.string.not_to_modify);
       } else {
-        boolean isOk = (radio != null);
-        if (isOk) {
+        if (radio == null) {
+          tell(R.string.radio_database_update_failed);
+        } else {
           radio.setName(getRadioName());
           assert urlWatcher.url != null;
           radio.setURL(urlWatcher.url);
           radio.setWebPageURL(webPageWatcher.url);
           assert getIcon() != null;
           radio.setIcon(getIcon());
-          // Same file name reused to store icon
-          isOk = radio.storeIcon(getMainActivity()) &&
-            getRadioLibrary().updateFrom(radio.getId(), radio.toContentValues());
-        }
-        if (!isOk) {
-          tell(R.string.radio_database_update_failed);
+          // Icon is stored with update, on database writer
+          final MainActivity mainActivity = getMainActivity();
+          getRadioLibrary().updateAsync(radio, isOk -> {
+            if (!isOk) {
+              mainActivity.tell(R.string.radio_database_update_failed);
+            }
+          });
         }
         onBackPressed();
       }
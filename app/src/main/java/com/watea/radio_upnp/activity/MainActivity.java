@@ -32,6 +32,7 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
+import android.database.sqlite.SQLiteException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Build;
@@ -67,9 +68,12 @@ import com.watea.radio_upnp.R;
 import com.watea.radio_upnp.adapter.RadiosAdapter;
 import com.watea.radio_upnp.adapter.UpnpDevicesAdapter;
 import com.watea.radio_upnp.adapter.UpnpRegistryAdapter;
+import com.watea.radio_upnp.model.IconCache;
+import com.watea.radio_upnp.model.IconStore;
 import com.watea.radio_upnp.model.Radio;
 import com.watea.radio_upnp.model.RadioLibrary;
 import com.watea.radio_upnp.model.UpnpDevice;
+import com.watea.radio_upnp.service.HealthProber;
 import com.watea.radio_upnp.service.NetworkProxy;
 
 import org.fourthline.cling.android.AndroidUpnpService;
@@ -86,13 +90,15 @@ import java.io.Writer;
 import java.net.URL;
 import java.util.Calendar;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.Vector;
 
 public class MainActivity
   extends AppCompatActivity
   implements NavigationView.OnNavigationItemSelectedListener {
   private static final int SEARCH_TIMEOUT = 10;
-  private static final int RADIO_ICON_SIZE = 300;
+  private static final int RADIO_ICON_SIZE = IconStore.ICON_SIZE;
   private static final String LOG_TAG = MainActivity.class.getName();
   private static final Map<Class<? extends Fragment>, Integer> FRAGMENT_MENU_IDS =
     new Hashtable<Class<? extends Fragment>, Integer>() {
@@ -181,7 +187,10 @@ public class MainActivity
   private RadioGardenController radioGardenController;
   // />
   private RadioLibrary radioLibrary = null;
+  private HealthProber healthProber = null;
   private boolean gotItRadioGarden = false;
+  // Skip to next or previous radio is within preferred radios if set
+  private boolean isPreferredRadios = false;
   private int navigationMenuCheckedId;
   private AndroidUpnpService androidUpnpService = null;
   private UpnpRegistryAdapter upnpRegistryAdapter = null;
@@ -229,8 +238,12 @@ public class MainActivity
     return RadiosAdapter.createScaledBitmap(bitmap, RADIO_ICON_SIZE);
   }
 
+  public static int getRadioIconSize() {
+    return RADIO_ICON_SIZE;
+  }
+
   public static int getSmallIconSize() {
-    return RADIO_ICON_SIZE / 2;
+    return IconStore.SMALL_ICON_SIZE;
   }
 
   @Nullable
@@ -344,7 +357,13 @@ public class MainActivity
       ((androidUpnpService != null) &&
         (chosenUpnpDevice != null) &&
         networkProxy.hasWifiIpAddress()) ?
-        chosenUpnpDevice.getIdentity() : null);
+        chosenUpnpDevice.getIdentity() : null,
+      isPreferredRadios);
+  }
+
+  // Radio list shown to user
+  public void setPreferredRadios(boolean isPreferredRadios) {
+    this.isPreferredRadios = isPreferredRadios;
   }
 
   @NonNull
@@ -449,8 +468,20 @@ public class MainActivity
     upnpConnection.onServiceDisconnected(null);
     // PlayerController call
     playerController.onActivityPause();
+    // Stop health check, before database
+    healthProber.cancel();
     // Close radios database
     radioLibrary.close();
+    IconCache.logStatistics();
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    // Icons are decoded again when needed
+    if (level >= TRIM_MEMORY_BACKGROUND) {
+      IconCache.clear();
+    }
   }
 
   @Override
@@ -482,6 +513,9 @@ public class MainActivity
     }
     // PlayerController call
     playerController.onActivityResume(radioLibrary);
+    // Check radios in background
+    healthProber = new HealthProber(radioLibrary, networkProxy, getString(R.string.app_name));
+    healthProber.scan();
     // Radio Garden share?
     if (newIntent != null) {
       radioGardenController.onNewIntent(newIntent);
@@ -623,20 +657,30 @@ public class MainActivity
     navigationMenu.findItem(navigationMenuCheckedId).setChecked(true);
   }
 
+  // Radios are read and written on a database reader
   private void dumpRadios() {
     final File dumpFile = new File(getExternalFilesDir(null), "radios.csv");
-    final AlertDialog.Builder alertDialogBuilder =
-      new AlertDialog.Builder(this, R.style.AlertDialogStyle)
-        // Restore checked item
-        .setOnDismissListener(dialogInterface -> checkNavigationMenu());
-    try (Writer writer = new OutputStreamWriter(new FileOutputStream(dumpFile))) {
-      writer.write(radioLibrary.marshall(true));
-      alertDialogBuilder.setMessage(R.string.export_done);
-    } catch (IOException iOException) {
-      Log.e(LOG_TAG, "dumpRadios: internal failure", iOException);
-      alertDialogBuilder.setMessage(R.string.dump_error);
-    }
-    alertDialogBuilder.create().show();
+    radioLibrary.read(
+      () -> {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(dumpFile))) {
+          writer.write(radioLibrary.marshall(true));
+          return true;
+        } catch (IOException | SQLiteException | IllegalStateException exception) {
+          Log.e(LOG_TAG, "dumpRadios: internal failure", exception);
+          return false;
+        }
+      },
+      isDone -> {
+        // Activity may have been left meanwhile
+        if (!isFinishing()) {
+          new AlertDialog.Builder(this, R.style.AlertDialogStyle)
+            .setMessage(isDone ? R.string.export_done : R.string.dump_error)
+            // Restore checked item
+            .setOnDismissListener(dialogInterface -> checkNavigationMenu())
+            .create()
+            .show();
+        }
+      });
   }
 
   private void setNotification() {
@@ -654,22 +698,26 @@ public class MainActivity
     return (androidUpnpService == null) ? null : androidUpnpService.getRegistry();
   }
 
+  // Radios are added on database writer
   private void setDefaultRadios() {
+    final List<Radio> radios = new Vector<>();
     for (DefaultRadio defaultRadio : DEFAULT_RADIOS) {
       try {
-        final Radio radio = new Radio(
+        radios.add(new Radio(
           defaultRadio.name,
           new URL(defaultRadio.uRL),
           new URL(defaultRadio.webPageURL),
           false,
-          resourceToBitmap(defaultRadio.drawable));
-        if (!radioLibrary.add(radio)) {
-          Log.e(LOG_TAG, "setDefaultRadios: internal failure on: " + radio.getName());
-        }
+          resourceToBitmap(defaultRadio.drawable)));
       } catch (Exception exception) {
         Log.e(LOG_TAG, "setDefaultRadios: internal failure", exception);
       }
     }
+    radioLibrary.addAllAsync(radios, isOk -> {
+      if (!isOk) {
+        Log.e(LOG_TAG, "setDefaultRadios: internal failure adding radios");
+      }
+    });
   }
 
   @NonNull
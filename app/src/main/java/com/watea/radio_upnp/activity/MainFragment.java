@@ -65,6 +65,7 @@ public class MainFragment extends MainActivityFragment {
   // />
   private int radioClickCount = 0;
   private boolean isPreferredRadios = false;
+  private boolean isReachableRadios = false;
   private boolean gotItRadioLongPress;
   private final RadiosMainAdapter.Listener radiosMainAdapterListener =
     new RadiosMainAdapter.Listener() {
@@ -107,7 +108,9 @@ public class MainFragment extends MainActivityFragment {
     onConfigurationChanged(getMainActivity().getResources().getConfiguration());
     // Set view
     assert getRadioLibrary() != null;
+    radiosMainAdapter.setReachableOnly(isReachableRadios);
     radiosMainAdapter.set(getRadioLibrary(), isPreferredRadios);
+    getMainActivity().setPreferredRadios(isPreferredRadios);
     // UPnP changes
     upnpDevicesAdapter.setChosenDeviceListener(chosenDeviceListener);
   }
@@ -136,11 +139,17 @@ public class MainFragment extends MainActivityFragment {
     switch (item.getItemId()) {
       case R.id.action_preferred:
         radiosMainAdapter.refresh(isPreferredRadios = !isPreferredRadios);
+        getMainActivity().setPreferredRadios(isPreferredRadios);
         setPreferredMenuItem();
         if (!gotItPreferredRadios) {
           preferredRadiosAlertDialog.show();
         }
         return true;
+      case R.id.action_reachable:
+        item.setChecked(isReachableRadios = !isReachableRadios);
+        radiosMainAdapter.setReachableOnly(isReachableRadios);
+        radiosMainAdapter.refresh(isPreferredRadios);
+        return true;
       case R.id.action_dlna:
         upnpDevicesAdapter.removeChosenUpnpDevice();
         tell(R.string.no_dlna_selection);
@@ -156,6 +165,7 @@ public class MainFragment extends MainActivityFragment {
   public void onCreateOptionsMenu(@NonNull Menu menu) {
     dlnaMenuItem = menu.findItem(R.id.action_dlna);
     preferredMenuItem = menu.findItem(R.id.action_preferred);
+    menu.findItem(R.id.action_reachable).setChecked(isReachableRadios);
     chosenDeviceListener.onChosenDeviceChange(upnpDevicesAdapter.getChosenUpnpDeviceIcon());
     setPreferredMenuItem();
   }
@@ -229,6 +239,7 @@ public class MainFragment extends MainActivityFragment {
     super.onActivityCreated(savedInstanceState);
     if (savedInstanceState != null) {
       isPreferredRadios = savedInstanceState.getBoolean(getString(R.string.key_preferred_radios));
+      isReachableRadios = savedInstanceState.getBoolean(getString(R.string.key_reachable_radios));
     }
     // Shared preferences
     SharedPreferences sharedPreferences = getMainActivity().getPreferences(Context.MODE_PRIVATE);
@@ -244,6 +255,7 @@ public class MainFragment extends MainActivityFragment {
   public void onSaveInstanceState(@NonNull Bundle outState) {
     super.onSaveInstanceState(outState);
     outState.putBoolean(getString(R.string.key_preferred_radios), isPreferredRadios);
+    outState.putBoolean(getString(R.string.key_reachable_radios), isReachableRadios);
   }
 
   private boolean wifiTest(@NonNull Runnable runnable) {
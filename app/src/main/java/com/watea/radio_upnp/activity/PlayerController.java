@@ -114,7 +114,7 @@ public class PlayerController {
       playedRadioLinearLayout.setVisibility(MainActivityFragment.getVisibleFrom(isVisible));
       if (isVisible) {
         playedRadioNameTextView.setText(radio.getName());
-        albumArtImageView.setImageBitmap(MainActivity.createScaledBitmap(radio.getIcon()));
+        albumArtImageView.setImageBitmap(radio.getIcon(MainActivity.getRadioIconSize()));
         setPreferredButton(radio.isPreferred());
       }
     }
@@ -337,7 +337,7 @@ public class PlayerController {
         Log.i(LOG_TAG, "Internal failure, radio is null");
       } else {
         assert radioLibrary != null;
-        radioLibrary.setPreferred(radio.getId(), !radio.isPreferred());
+        radioLibrary.setPreferredAsync(radio.getId(), !radio.isPreferred(), null);
       }
     });
     // Create MediaBrowserServiceCompat, launch RadioService
@@ -378,7 +378,9 @@ public class PlayerController {
   }
 
   // radio == null for current, do nothing if no current
-  public void startReading(@Nullable Radio radio, @Nullable String upnpDeviceIdentity) {
+  // Next and previous radios are taken within preferred radios if isPreferredRadios
+  public void startReading(
+    @Nullable Radio radio, @Nullable String upnpDeviceIdentity, boolean isPreferredRadios) {
     // Should not happen
     if (mediaController == null) {
       mainActivity.tell(R.string.radio_connection_waiting);
@@ -395,6 +397,7 @@ public class PlayerController {
     if (upnpDeviceIdentity != null) {
       bundle.putString(mainActivity.getString(R.string.key_upnp_device), upnpDeviceIdentity);
     }
+    bundle.putBoolean(mainActivity.getString(R.string.key_preferred_radios), isPreferredRadios);
     mediaController.getTransportControls().prepareFromMediaId(radio.getId().toString(), bundle);
     // Information are cleared
     playInformations.clear();
@@ -40,7 +40,6 @@ import com.watea.radio_upnp.model.Radio;
 import com.watea.radio_upnp.model.RadioLibrary;
 import com.watea.radio_upnp.service.RadioURL;
 
-import org.apache.commons.io.IOUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -109,7 +108,7 @@ public class RadioGardenController {
 
   @NonNull
   private static JSONObject getJson(@NonNull URL url) throws JSONException, IOException {
-    return new JSONObject(IOUtils.toString(url.openStream()));
+    return new JSONObject(new RadioURL(url).getString());
   }
 
   public void onNewIntent(@NonNull Intent intent) {
@@ -197,24 +196,23 @@ public class RadioGardenController {
     final Bitmap icon = tempIcon;
     final JSONObject data = tempData;
     final boolean isAsynchronousOk = tempIssOk;
-    // Synchronous update
+    // Library update on database writer, result told on main thread
     handler.post(() -> {
-      boolean isAddOk = isAsynchronousOk;
       final RadioLibrary radioLibrary = mainActivity.getRadioLibrary();
-      if (isAddOk) {
+      if (isAsynchronousOk && (radioLibrary != null) && radioLibrary.isOpen()) {
         try {
-          isAddOk = (radioLibrary != null) && radioLibrary.isOpen() && radioLibrary.add(new Radio(
+          radioLibrary.addAsync(new Radio(
             data.getString("title"),
             new URL(RADIO_GARDEN + LISTEN + id + CHANNEL_MP3),
             webSite,
             false,
-            (icon == null) ? mainActivity.getDefaultIcon() : icon));
-          Log.d(LOG_TAG, "Radio added!");
+            (icon == null) ? mainActivity.getDefaultIcon() : icon), this::tell);
+          return;
         } catch (Exception exception) {
           Log.d(LOG_TAG, "handle synchronous exception", exception);
         }
       }
-      tell(isAddOk);
+      tell(false);
     });
   }
 
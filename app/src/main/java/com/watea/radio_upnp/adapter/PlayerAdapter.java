@@ -82,7 +82,8 @@ public abstract class PlayerAdapter
   private final Listener listener;
   @Nullable
   private final AudioFocusRequest audioFocusRequest;
-  protected int state = PlaybackStateCompat.STATE_NONE;
+  // Read by streaming sessions
+  protected volatile int state = PlaybackStateCompat.STATE_NONE;
   private boolean playOnAudioFocus = false;
   private final BroadcastReceiver audioNoisyReceiver = new BroadcastReceiver() {
     @Override
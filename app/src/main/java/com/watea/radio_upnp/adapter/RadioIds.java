@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.adapter;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+// Ordered radio ids, with index lookup by id.
+// Index map is kept up to date on append, rebuilt on first lookup after other changes.
+// Not thread safe, main thread only.
+class RadioIds {
+  private static final int DEFAULT = -1;
+  private final List<Long> ids = new Vector<>();
+  private final Map<Long, Integer> indexes = new Hashtable<>();
+  private boolean isIndexed = true;
+
+  @NonNull
+  Long get(int index) {
+    return ids.get(index);
+  }
+
+  int size() {
+    return ids.size();
+  }
+
+  boolean isEmpty() {
+    return ids.isEmpty();
+  }
+
+  // DEFAULT if not found
+  int indexOf(@NonNull Long id) {
+    if (!isIndexed) {
+      indexes.clear();
+      for (int i = 0; i < ids.size(); i++) {
+        indexes.put(ids.get(i), i);
+      }
+      isIndexed = true;
+    }
+    final Integer index = indexes.get(id);
+    return (index == null) ? DEFAULT : index;
+  }
+
+  void addAll(@NonNull Collection<Long> addedIds) {
+    for (Long id : addedIds) {
+      if (isIndexed) {
+        indexes.put(id, ids.size());
+      }
+      ids.add(id);
+    }
+  }
+
+  void remove(int index) {
+    ids.remove(index);
+    isIndexed = false;
+  }
+
+  // Ids in between are shifted
+  void move(int fromIndex, int toIndex) {
+    ids.add(toIndex, ids.remove(fromIndex));
+    isIndexed = false;
+  }
+
+  void set(@NonNull List<Long> newIds) {
+    ids.clear();
+    indexes.clear();
+    isIndexed = true;
+    addAll(newIds);
+  }
+
+  // Copy, for background use
+  @NonNull
+  List<Long> snapshot() {
+    return new Vector<>(ids);
+  }
+}
\ No newline at end of file
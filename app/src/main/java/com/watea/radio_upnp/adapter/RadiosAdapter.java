@@ -23,9 +23,11 @@
 
 package com.watea.radio_upnp.adapter;
 
-import android.annotation.SuppressLint;
 import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -33,26 +35,47 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.watea.radio_upnp.activity.MainActivity;
+import com.watea.radio_upnp.model.IconCache;
 import com.watea.radio_upnp.model.Radio;
+import com.watea.radio_upnp.model.RadioHealth;
 import com.watea.radio_upnp.model.RadioLibrary;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public abstract class RadiosAdapter<V extends RadiosAdapter<?>.ViewHolder>
   extends RecyclerView.Adapter<V> {
   private static final int DEFAULT = -1;
+  private static final String LOG_TAG = RadiosAdapter.class.getName();
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  // Shared by adapters, refreshes are serialized
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+  @Nullable
+  private static Bitmap placeholder = null;
   @NonNull
   protected final Listener listener;
-  protected final List<Long> radioIds = new Vector<>();
+  protected final RadioIds radioIds = new RadioIds();
   private final int resource;
   @Nullable
   protected RadioLibrary radioLibrary = null;
   private int currentRadioIndex = DEFAULT;
   private boolean isPreferred = false;
+  private boolean isReachableOnly = false;
+  // Incremented on each change of radioIds, so that stale refresh results are computed again
+  private int version = 0;
+  // One refresh at a time; dirty if asked for meanwhile
+  private boolean isRefreshing = false;
+  private boolean isRefreshDirty = false;
+  // Between set() and unset()
+  private boolean isActive = false;
   @NonNull
   private final RadioLibrary.Listener radioLibraryListener = new RadioLibrary.Listener() {
     @Override
@@ -72,27 +95,61 @@ public abstract class RadiosAdapter<V extends RadiosAdapter<?>.ViewHolder>
     public void onAdd(@NonNull Long radioId) {
       // Don't add to view if preferred switch is activated, as new radio if not preferred
       if (!isPreferred) {
-        radioIds.add(radioId);
+        version++;
+        radioIds.addAll(Collections.singletonList(radioId));
         notifyItemRangeInserted(getIndexOf(radioId), 1);
         onCountChange(false);
       }
     }
 
+    @Override
+    public void onAddAll(@NonNull List<Long> addedRadioIds) {
+      if (!isPreferred && !addedRadioIds.isEmpty()) {
+        version++;
+        final int index = radioIds.size();
+        radioIds.addAll(addedRadioIds);
+        notifyItemRangeInserted(index, addedRadioIds.size());
+        onCountChange(false);
+      }
+    }
+
+    @Override
+    public void onUpdate(@NonNull Long radioId) {
+      final int index = getIndexOf(radioId);
+      if (index >= 0) {
+        notifyItemChanged(index);
+      }
+    }
+
     @Override
     public void onRemove(@NonNull Long radioId) {
       final int index = getIndexOf(radioId);
+      // May be filtered out
+      if (index < 0) {
+        return;
+      }
+      version++;
       radioIds.remove(index);
+      if (index < currentRadioIndex) {
+        currentRadioIndex--;
+      } else if (index == currentRadioIndex) {
+        currentRadioIndex = DEFAULT;
+      }
       notifyItemRemoved(index);
       onCountChange(radioIds.isEmpty());
     }
 
+    // Order may have changed, only changes are notified
+    @Override
+    public void onMoveRange(@NonNull List<Long> movedRadioIds) {
+      refresh(isPreferred);
+    }
+
     @Override
-    public void onMove(@NonNull Long fromId, @NonNull Long toId) {
-      final int fromIndex = getIndexOf(fromId);
-      final int toIndex = getIndexOf(toId);
-      radioIds.set(toIndex, fromId);
-      radioIds.set(fromIndex, toId);
-      notifyItemMoved(fromIndex, toIndex);
+    public void onHealthChange() {
+      if (isReachableOnly) {
+        refresh(isPreferred);
+      }
     }
   };
 
@@ -104,12 +161,29 @@ public abstract class RadiosAdapter<V extends RadiosAdapter<?>.ViewHolder>
     recyclerView.setAdapter(this);
   }
 
+  // Unknown health comes last
+  private static int getLatency(@Nullable RadioHealth radioHealth) {
+    return (radioHealth == null) ? Integer.MAX_VALUE : radioHealth.getLatency();
+  }
+
   @NonNull
   public static Bitmap createScaledBitmap(@NonNull Bitmap bitmap, int size) {
     return Bitmap.createScaledBitmap(bitmap, size, size, true);
   }
 
+  // Transparent, shown while icon is decoded
+  @NonNull
+  private static Bitmap getPlaceholder() {
+    if (placeholder == null) {
+      final int size = MainActivity.getSmallIconSize();
+      placeholder = Bitmap.createBitmap(size, size, Bitmap.Config.ALPHA_8);
+    }
+    return placeholder;
+  }
+
   public void unset() {
+    // Pending refresh is dropped
+    isActive = false;
     if (radioLibrary != null) {
       radioLibrary.removeListener(radioLibraryListener);
     }
@@ -130,22 +204,86 @@ public abstract class RadiosAdapter<V extends RadiosAdapter<?>.ViewHolder>
     return radioIds.size();
   }
 
-  @SuppressLint("NotifyDataSetChanged")
+  // Radio ids are read and compared to current ones in the background,
+  // then only changes are notified.
+  // If radio ids have changed or a refresh was asked for meanwhile, refresh is run again.
   public void refresh(boolean isPreferred) {
     this.isPreferred = isPreferred;
-    radioIds.clear();
+    if (isRefreshing) {
+      isRefreshDirty = true;
+      return;
+    }
+    isRefreshing = true;
+    isRefreshDirty = false;
+    final boolean isReachableOnly = this.isReachableOnly;
+    final RadioLibrary radioLibrary = this.radioLibrary;
     assert radioLibrary != null;
-    radioIds.addAll(
-      isPreferred ? radioLibrary.getPreferredRadioIds() : radioLibrary.getAllRadioIds());
-    currentRadioIndex = getIndexOf(radioLibrary.getCurrentRadio());
-    notifyDataSetChanged();
-    onCountChange(radioIds.isEmpty());
+    final int refreshVersion = version;
+    final List<Long> oldIds = radioIds.snapshot();
+    executor.execute(() -> {
+      final List<Long> newIds;
+      final DiffUtil.DiffResult diffResult;
+      try {
+        final List<Long> ids =
+          isPreferred ? radioLibrary.getPreferredRadioIds() : radioLibrary.getAllRadioIds();
+        newIds = isReachableOnly ? getReachable(radioLibrary, ids) : ids;
+        diffResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+          @Override
+          public int getOldListSize() {
+            return oldIds.size();
+          }
+
+          @Override
+          public int getNewListSize() {
+            return newIds.size();
+          }
+
+          @Override
+          public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldIds.get(oldItemPosition).equals(newIds.get(newItemPosition));
+          }
+
+          // Content changes are notified by library
+          @Override
+          public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return true;
+          }
+        });
+      } catch (IllegalStateException illegalStateException) {
+        // Library closed meanwhile
+        Log.i(LOG_TAG, "refresh: library not available", illegalStateException);
+        handler.post(() -> isRefreshing = false);
+        return;
+      }
+      handler.post(() -> {
+        isRefreshing = false;
+        if (!isActive) {
+          return;
+        }
+        // Diff is against a former list
+        if ((refreshVersion != version) || isRefreshDirty) {
+          refresh(this.isPreferred);
+          return;
+        }
+        radioIds.set(newIds);
+        currentRadioIndex = getIndexOf(radioLibrary.getCurrentRadio());
+        diffResult.dispatchUpdatesTo(this);
+        onCountChange(radioIds.isEmpty());
+      });
+    });
+  }
+
+  // Radios known as unreachable are hidden, others are sorted by latency.
+  // Taken into account on next refresh.
+  public void setReachableOnly(boolean isReachableOnly) {
+    this.isReachableOnly = isReachableOnly;
   }
 
   // Must be called
   public void set(@NonNull RadioLibrary radioLibrary, boolean isPreferred) {
     this.radioLibrary = radioLibrary;
     this.radioLibrary.addListener(radioLibraryListener);
+    isActive = true;
     refresh(isPreferred);
   }
 
@@ -162,10 +300,41 @@ public abstract class RadiosAdapter<V extends RadiosAdapter<?>.ViewHolder>
     return (radio == null) ? DEFAULT : getIndexOf(radio.getId());
   }
 
+  // View only, library is not changed; radios in between are shifted
+  protected void moveItem(int fromIndex, int toIndex) {
+    version++;
+    radioIds.move(fromIndex, toIndex);
+    if (currentRadioIndex == fromIndex) {
+      currentRadioIndex = toIndex;
+    } else if ((fromIndex < currentRadioIndex) && (currentRadioIndex <= toIndex)) {
+      currentRadioIndex--;
+    } else if ((toIndex <= currentRadioIndex) && (currentRadioIndex < fromIndex)) {
+      currentRadioIndex++;
+    }
+    notifyItemMoved(fromIndex, toIndex);
+  }
+
   protected void onCountChange(boolean isEmpty) {
     listener.onCountChange(isEmpty);
   }
 
+  @NonNull
+  private static List<Long> getReachable(
+    @NonNull RadioLibrary radioLibrary, @NonNull List<Long> ids) {
+    final Map<Long, RadioHealth> healths = radioLibrary.getHealths();
+    final List<Long> result = new Vector<>();
+    for (Long id : ids) {
+      final RadioHealth radioHealth = healths.get(id);
+      if ((radioHealth == null) || radioHealth.isReachable()) {
+        result.add(id);
+      }
+    }
+    // Stable sort, order is kept for same latency
+    Collections.sort(result, (id1, id2) ->
+      Integer.compare(getLatency(healths.get(id1)), getLatency(healths.get(id2))));
+    return result;
+  }
+
   public interface Listener {
     void onClick(@NonNull Radio radio);
 
@@ -196,12 +365,20 @@ public abstract class RadiosAdapter<V extends RadiosAdapter<?>.ViewHolder>
 
     protected void setView(@NonNull Radio radio) {
       this.radio = radio;
-      setImage(new BitmapDrawable(
-        radioTextView.getResources(),
-        createScaledBitmap(this.radio.getIcon(), MainActivity.getSmallIconSize())));
+      setImage(new BitmapDrawable(radioTextView.getResources(), getPlaceholder()));
+      IconCache.get(this.radio, MainActivity.getSmallIconSize(), icon -> {
+        // Holder may have been rebound meanwhile
+        if (this.radio == radio) {
+          onIcon(icon);
+        }
+      });
       radioTextView.setText(this.radio.getName());
     }
 
+    protected void onIcon(@NonNull Bitmap icon) {
+      setImage(new BitmapDrawable(radioTextView.getResources(), icon));
+    }
+
     protected boolean isCurrentRadio() {
       assert radio != Radio.DUMMY_RADIO;
       return (getIndexOf(radio) == currentRadioIndex);
@@ -23,7 +23,6 @@
 
 package com.watea.radio_upnp.adapter;
 
-import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.view.View;
@@ -66,15 +65,13 @@ public class RadiosMainAdapter extends RadiosAdapter<RadiosMainAdapter.ViewHolde
     protected void setView(@NonNull Radio radio) {
       super.setView(radio);
       assert radioLibrary != null;
-      if (isCurrentRadio()) {
+      // Dominant color is stored with radio, may be not yet computed
+      final Integer dominantColor = this.radio.getDominantColor();
+      if (isCurrentRadio() || (dominantColor == null)) {
         radioTextView.setBackground(defaultBackground);
       } else {
-        radioTextView.setBackgroundColor(getDominantColor(this.radio.getIcon()));
+        radioTextView.setBackgroundColor(dominantColor);
       }
     }
-
-    private int getDominantColor(@NonNull Bitmap bitmap) {
-      return createScaledBitmap(bitmap, 1).getPixel(0, 0);
-    }
   }
 }
\ No newline at end of file
@@ -31,12 +31,15 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.watea.radio_upnp.R;
 import com.watea.radio_upnp.model.Radio;
 
+import java.util.Collections;
+
 public class RadiosModifyAdapter extends RadiosAdapter<RadiosModifyAdapter.ViewHolder> {
   private static final String LOG_TAG = RadiosModifyAdapter.class.getName();
 
@@ -63,6 +66,9 @@ public class RadiosModifyAdapter extends RadiosAdapter<RadiosModifyAdapter.ViewH
   private class RadioItemTouchHelperCallback extends ItemTouchHelper.Callback {
     private static final int DRAG_FLAGS = ItemTouchHelper.UP | ItemTouchHelper.DOWN;
     private static final int IDLE_FLAGS = ItemTouchHelper.START | ItemTouchHelper.END;
+    // Radio being dragged, null if none
+    @Nullable
+    private Long draggedRadioId = null;
 
     @Override
     public int getMovementFlags(
@@ -79,14 +85,40 @@ public class RadiosModifyAdapter extends RadiosAdapter<RadiosModifyAdapter.ViewH
       @NonNull RecyclerView recyclerView,
       @NonNull RecyclerView.ViewHolder viewHolder,
       @NonNull RecyclerView.ViewHolder targetViewHolder) {
-      final Long fromId = radioIds.get(viewHolder.getAbsoluteAdapterPosition());
-      final Long toId = radioIds.get(targetViewHolder.getAbsoluteAdapterPosition());
+      final int fromIndex = viewHolder.getAbsoluteAdapterPosition();
+      final int toIndex = targetViewHolder.getAbsoluteAdapterPosition();
+      if ((fromIndex < 0) || (toIndex < 0)) {
+        return false;
+      }
+      // Library is updated once, on drop
+      if (draggedRadioId == null) {
+        draggedRadioId = radioIds.get(fromIndex);
+      }
+      moveItem(fromIndex, toIndex);
+      return true;
+    }
+
+    @Override
+    public void clearView(
+      @NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
+      super.clearView(recyclerView, viewHolder);
+      if (draggedRadioId == null) {
+        return;
+      }
+      final int index = getIndexOf(draggedRadioId);
       assert radioLibrary != null;
-      final boolean result = radioLibrary.move(fromId, toId);
-      if (!result) {
-        databaseWarn();
+      if ((index >= 0) && radioLibrary.isOpen()) {
+        radioLibrary.moveRangeAsync(
+          Collections.singletonList(draggedRadioId),
+          (index > 0) ? radioIds.get(index - 1) : null,
+          (index < radioIds.size() - 1) ? radioIds.get(index + 1) : null,
+          isOk -> {
+            if (!isOk) {
+              databaseWarn();
+            }
+          });
       }
-      return result;
+      draggedRadioId = null;
     }
 
     @Override
@@ -103,9 +135,11 @@ public class RadiosModifyAdapter extends RadiosAdapter<RadiosModifyAdapter.ViewH
     public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
       final int position = viewHolder.getAbsoluteAdapterPosition();
       assert radioLibrary != null;
-      if (!radioLibrary.deleteFrom(radioIds.get(position))) {
-        databaseWarn();
-      }
+      radioLibrary.deleteFromAsync(radioIds.get(position), isOk -> {
+        if (!isOk) {
+          databaseWarn();
+        }
+      });
     }
   }
 
@@ -118,9 +152,11 @@ public class RadiosModifyAdapter extends RadiosAdapter<RadiosModifyAdapter.ViewH
       preferredImageButton = itemView.findViewById(R.id.row_radio_preferred_image_button);
       preferredImageButton.setOnClickListener(v -> {
         assert radioLibrary != null;
-        if (!radioLibrary.setPreferred(radio.getId(), !radio.isPreferred())) {
-          databaseWarn();
-        }
+        radioLibrary.setPreferredAsync(radio.getId(), !radio.isPreferred(), isOk -> {
+          if (!isOk) {
+            databaseWarn();
+          }
+        });
       });
     }
 
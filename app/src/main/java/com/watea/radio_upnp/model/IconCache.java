@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Process-wide memory cache of radio icons, bounded in bytes.
+// Key is radio id, size and icon file, so a new icon file is a new entry.
+// Icons are decoded in the background, subsampled to requested size.
+public class IconCache {
+  private static final String LOG_TAG = IconCache.class.getName();
+  // 1/8 of available memory
+  private static final int BYTES_MAX = (int) Math.min(
+    Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+  private static final int DECODERS = 2;
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  private static final ExecutorService executorService = Executors.newFixedThreadPool(DECODERS);
+  private static final LruCache<String, Bitmap> icons = new LruCache<String, Bitmap>(BYTES_MAX) {
+    @Override
+    protected int sizeOf(String key, Bitmap bitmap) {
+      return bitmap.getAllocationByteCount();
+    }
+  };
+  // Consumers waiting for a decoding, by key
+  private static final Map<String, List<Consumer<Bitmap>>> pendings = new Hashtable<>();
+  private static int hitCount = 0;
+  private static int missCount = 0;
+
+  private IconCache() {
+  }
+
+  // Icon is passed on main thread; at once if known.
+  // Shall be called on main thread.
+  public static void get(@NonNull Radio radio, int size, @NonNull Consumer<Bitmap> consumer) {
+    final File iconFile = radio.getIconFile();
+    final String key = radio.getId() + "_" + size + "_" + iconFile.getName();
+    final Bitmap bitmap = icons.get(key);
+    if (bitmap != null) {
+      hitCount++;
+      consumer.accept(bitmap);
+      return;
+    }
+    missCount++;
+    List<Consumer<Bitmap>> consumers = pendings.get(key);
+    if (consumers != null) {
+      consumers.add(consumer);
+      return;
+    }
+    consumers = new Vector<>();
+    consumers.add(consumer);
+    pendings.put(key, consumers);
+    executorService.execute(() -> {
+      final Bitmap icon = decode(iconFile, size);
+      handler.post(() -> {
+        final List<Consumer<Bitmap>> waitingConsumers = pendings.remove(key);
+        if (icon == null) {
+          Log.e(LOG_TAG, "get: unable to decode " + iconFile.getName());
+          return;
+        }
+        icons.put(key, icon);
+        if (waitingConsumers != null) {
+          for (Consumer<Bitmap> waitingConsumer : waitingConsumers) {
+            waitingConsumer.accept(icon);
+          }
+        }
+      });
+    });
+  }
+
+  public static int getHitCount() {
+    return hitCount;
+  }
+
+  public static int getMissCount() {
+    return missCount;
+  }
+
+  // 0 if no request
+  public static float getHitRate() {
+    final int count = hitCount + missCount;
+    return (count == 0) ? 0 : (float) hitCount / count;
+  }
+
+  public static void logStatistics() {
+    Log.d(LOG_TAG, "Icon cache hits/misses: " + hitCount + "/" + missCount +
+      ", size: " + icons.size() + "/" + icons.maxSize() + " bytes");
+  }
+
+  // Releases memory, statistics are kept
+  public static void clear() {
+    icons.evictAll();
+  }
+
+  // Pre-rendered file if any, subsampled then scaled if not exact
+  @Nullable
+  private static Bitmap decode(@NonNull File iconFile, int size) {
+    final File file = IconStore.getFile(iconFile, size);
+    final String path = ((file == null) ? iconFile : file).getPath();
+    final BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(path, options);
+    if ((options.outWidth <= 0) || (options.outHeight <= 0)) {
+      return null;
+    }
+    options.inSampleSize = 1;
+    while ((options.outWidth / (options.inSampleSize * 2) >= size) &&
+      (options.outHeight / (options.inSampleSize * 2) >= size)) {
+      options.inSampleSize *= 2;
+    }
+    options.inJustDecodeBounds = false;
+    final Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+    return ((bitmap == null) || ((bitmap.getWidth() == size) && (bitmap.getHeight() == size))) ?
+      bitmap : Bitmap.createScaledBitmap(bitmap, size, size, true);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Radio icons are stored normalized (square, ICON_SIZE), named after their content hash,
+// so identical icons are stored once.
+// A variant is pre-rendered for each size in use, so no rescaling is needed for display.
+public class IconStore {
+  public static final int ICON_SIZE = 300;
+  public static final int SMALL_ICON_SIZE = ICON_SIZE / 2;
+  private static final int[] VARIANT_SIZES = {SMALL_ICON_SIZE};
+  private static final String LOG_TAG = IconStore.class.getName();
+  private static final String PREFIX = "icon_";
+  private static final String EXTENSION = ".png";
+
+  private IconStore() {
+  }
+
+  // Returns icon file, written only if not already known
+  @NonNull
+  public static File store(@NonNull Context context, @NonNull Bitmap icon) throws IOException {
+    final Bitmap normalizedIcon = normalize(icon, ICON_SIZE);
+    final byte[] bytes = toPng(normalizedIcon);
+    final String name = PREFIX + getHash(bytes);
+    final File file = getFile(context, name + EXTENSION);
+    if (!file.exists()) {
+      write(file, bytes);
+      for (int size : VARIANT_SIZES) {
+        write(getVariantFile(file, size), toPng(normalize(normalizedIcon, size)));
+      }
+    }
+    return file;
+  }
+
+  // Returns icon file at given size; built on first call if not pre-rendered
+  // (or if icon file was not created by store).
+  // Null if not available.
+  @Nullable
+  public static File getFile(@NonNull File iconFile, int size) {
+    if ((size == ICON_SIZE) && iconFile.getName().startsWith(PREFIX)) {
+      return iconFile.exists() ? iconFile : null;
+    }
+    final File file = getVariantFile(iconFile, size);
+    if (!file.exists()) {
+      final Bitmap icon = BitmapFactory.decodeFile(iconFile.getPath());
+      if (icon == null) {
+        return null;
+      }
+      try {
+        write(file, toPng(normalize(icon, size)));
+      } catch (IOException iOException) {
+        Log.e(LOG_TAG, "getFile: internal failure creating variant", iOException);
+        return null;
+      }
+    }
+    return file;
+  }
+
+  // Null if icon file is not available
+  @Nullable
+  public static Bitmap getIcon(@NonNull File iconFile, int size) {
+    final File file = getFile(iconFile, size);
+    return (file == null) ? null : BitmapFactory.decodeFile(file.getPath());
+  }
+
+  @NonNull
+  private static File getFile(@NonNull Context context, @NonNull String fileName) {
+    return new File(context.getFilesDir(), fileName);
+  }
+
+  @NonNull
+  private static File getVariantFile(@NonNull File iconFile, int size) {
+    final String name = iconFile.getName();
+    final int index = name.lastIndexOf('.');
+    return new File(
+      iconFile.getParentFile(),
+      ((index < 0) ? name : name.substring(0, index)) + "_" + size + EXTENSION);
+  }
+
+  @NonNull
+  private static Bitmap normalize(@NonNull Bitmap icon, int size) {
+    return ((icon.getWidth() == size) && (icon.getHeight() == size)) ?
+      icon : Bitmap.createScaledBitmap(icon, size, size, true);
+  }
+
+  @NonNull
+  private static byte[] toPng(@NonNull Bitmap icon) throws IOException {
+    final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    if (!icon.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream)) {
+      throw new IOException("toPng: compression failure");
+    }
+    return byteArrayOutputStream.toByteArray();
+  }
+
+  // Atomic, as identical icons may be stored concurrently
+  private static void write(@NonNull File file, @NonNull byte[] bytes) throws IOException {
+    final File tempFile = File.createTempFile(file.getName(), null, file.getParentFile());
+    try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile)) {
+      fileOutputStream.write(bytes);
+    }
+    if (!tempFile.renameTo(file)) {
+      tempFile.delete();
+      throw new IOException("write: unable to rename " + tempFile.getName());
+    }
+  }
+
+  @NonNull
+  private static String getHash(@NonNull byte[] bytes) {
+    try {
+      final StringBuilder hash = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+        hash.append(String.format("%02x", b));
+      }
+      return hash.toString();
+    } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+      // Never happens, SHA-256 is mandatory
+      throw new IllegalStateException(noSuchAlgorithmException);
+    }
+  }
+}
\ No newline at end of file
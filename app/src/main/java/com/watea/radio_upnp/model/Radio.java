@@ -39,17 +39,21 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.watea.radio_upnp.service.RadioURL;
+import com.watea.radio_upnp.service.ResolutionCache;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Radio {
   public static final Radio DUMMY_RADIO;
@@ -57,6 +61,11 @@ public class Radio {
   private static final String SPACER = ";";
   public static final String MARSHALL_HEAD =
     marshall("name") + marshall("url") + marshall("webPageUrl") + marshall("isPreferred");
+  private static final Pattern PLS_FILE_PATTERN = Pattern.compile("^File\\d+=(.+)$");
+  private static final Pattern ASX_REF_PATTERN =
+    Pattern.compile("<ref\\s+href\\s*=\\s*\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
+  private static final long PLAYLIST_TTL = 6 * 60 * 60 * 1000L; // ms
+  private static final ResolutionCache playlists = new ResolutionCache(PLAYLIST_TTL);
 
   static {
     Radio radio = null;
@@ -91,6 +100,11 @@ public class Radio {
   // as icon is stored as file (which may be changed, actually)
   @Nullable
   private Bitmap icon;
+  @Nullable
+  private Integer dominantColor = null;
+  // Export hash on source device, for imported radios
+  @Nullable
+  private String sourceHash = null;
 
   // Create Radio with no icon file
   public Radio(
@@ -154,8 +168,31 @@ public class Radio {
     }
     quality = Quality.valueOf(
       cursor.getString(cursor.getColumnIndex(RadioSQLContract.Columns.COLUMN_QUALITY)));
-    isPreferred = Boolean.valueOf(
-      cursor.getString(cursor.getColumnIndex(RadioSQLContract.Columns.COLUMN_IS_PREFERRED)));
+    isPreferred =
+      (cursor.getInt(cursor.getColumnIndex(RadioSQLContract.Columns.COLUMN_IS_PREFERRED)) != 0);
+    final int dominantColorIndex =
+      cursor.getColumnIndex(RadioSQLContract.Columns.COLUMN_DOMINANT_COLOR);
+    dominantColor = ((dominantColorIndex < 0) || cursor.isNull(dominantColorIndex)) ?
+      null : cursor.getInt(dominantColorIndex);
+    final int sourceHashIndex = cursor.getColumnIndex(RadioSQLContract.Columns.COLUMN_SOURCE_HASH);
+    sourceHash = ((sourceHashIndex < 0) || cursor.isNull(sourceHashIndex)) ?
+      null : cursor.getString(sourceHashIndex);
+  }
+
+  // Copy, icon is shared
+  public Radio(@NonNull Radio radio) {
+    id = radio.id;
+    name = radio.name;
+    iconFile = radio.iconFile;
+    type = radio.type;
+    language = radio.language;
+    url = radio.url;
+    webPageUrl = radio.webPageUrl;
+    quality = radio.quality;
+    isPreferred = radio.isPreferred;
+    icon = radio.icon;
+    dominantColor = radio.dominantColor;
+    sourceHash = radio.sourceHash;
   }
 
   public Radio(@NonNull String string) throws MalformedURLException {
@@ -175,28 +212,54 @@ public class Radio {
   // First URL if m3u, else do nothing
   @Nullable
   public static URL getUrlFromM3u(@NonNull URL uRL) {
-    if (!uRL.toString().endsWith(".m3u")) {
+    final String path = uRL.getPath().toLowerCase(Locale.ROOT);
+    final boolean isPls = path.endsWith(".pls");
+    final boolean isAsx = path.endsWith(".asx");
+    if (!isPls && !isAsx && !path.endsWith(".m3u") && !path.endsWith(".m3u8")) {
       return uRL;
     }
-    HttpURLConnection httpURLConnection = null;
+    final URL result = playlists.get(uRL);
+    if (result != null) {
+      return result;
+    }
+    // Closing the stream keeps connection alive
     try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
-      (httpURLConnection = new RadioURL(uRL).getActualHttpURLConnection()).getInputStream()))) {
-      String result;
-      while ((result = bufferedReader.readLine()) != null) {
-        if (result.startsWith("http://") || result.startsWith("https://")) {
-          return new URL(result);
+      new RadioURL(uRL).getActualHttpURLConnection().getInputStream()))) {
+      String line;
+      while ((line = bufferedReader.readLine()) != null) {
+        line = line.trim();
+        // HLS playlist is the stream itself
+        if (line.startsWith("#EXT-X-")) {
+          playlists.put(uRL, uRL);
+          return uRL;
+        }
+        final String entry;
+        if (isAsx) {
+          final Matcher matcher = ASX_REF_PATTERN.matcher(line);
+          entry = matcher.find() ? matcher.group(1) : null;
+        } else if (isPls) {
+          final Matcher matcher = PLS_FILE_PATTERN.matcher(line);
+          entry = matcher.find() ? matcher.group(1) : null;
+        } else {
+          entry = line;
+        }
+        if ((entry != null) && (entry.startsWith("http://") || entry.startsWith("https://"))) {
+          final URL stream = new URL(entry);
+          playlists.put(uRL, stream);
+          return stream;
         }
       }
     } catch (IOException iOException) {
-      Log.e(LOG_TAG, "Error getting M3U", iOException);
-    } finally {
-      if (httpURLConnection != null) {
-        httpURLConnection.disconnect();
-      }
+      Log.e(LOG_TAG, "Error getting playlist", iOException);
     }
     return null;
   }
 
+  // To be called when stream found in playlist fails
+  public static void invalidateUrlFromM3u(@NonNull URL uRL) {
+    playlists.remove(uRL);
+  }
+
   @NonNull
   private static String marshall(@NonNull String string) {
     return string + SPACER;
@@ -228,6 +291,10 @@ public class Radio {
     return getUrlFromM3u(url);
   }
 
+  public void invalidateUrlFromM3u() {
+    invalidateUrlFromM3u(url);
+  }
+
   @NonNull
   public Long getId() {
     return id;
@@ -305,10 +372,37 @@ public class Radio {
     return BitmapFactory.decodeFile(iconFile.getPath());
   }
 
+  // Pre-rendered icon, size x size
+  @NonNull
+  public Bitmap getIcon(int size) {
+    final Bitmap bitmap = IconStore.getIcon(iconFile, size);
+    return (bitmap == null) ? getIcon() : bitmap;
+  }
+
   public void setIcon(@NonNull Bitmap icon) {
     this.icon = icon;
   }
 
+  // Null if not yet computed
+  @Nullable
+  public Integer getDominantColor() {
+    return dominantColor;
+  }
+
+  @Nullable
+  public String getSourceHash() {
+    return sourceHash;
+  }
+
+  public void setSourceHash(@Nullable String sourceHash) {
+    this.sourceHash = sourceHash;
+  }
+
+  // Average color of icon
+  public static int getDominantColor(@NonNull Bitmap icon) {
+    return Bitmap.createScaledBitmap(icon, 1, 1, true).getPixel(0, 0);
+  }
+
   @SuppressWarnings("unused")
   @NonNull
   public Quality getQuality() {
@@ -338,13 +432,16 @@ public class Radio {
     contentValues.put(RadioSQLContract.Columns.COLUMN_WEB_PAGE,
       (webPageUrl == null) ? null : webPageUrl.toString());
     contentValues.put(RadioSQLContract.Columns.COLUMN_QUALITY, quality.toString());
-    contentValues.put(RadioSQLContract.Columns.COLUMN_IS_PREFERRED, isPreferred.toString());
+    contentValues.put(
+      RadioSQLContract.Columns.COLUMN_IS_PREFERRED, RadioSQLContract.toInteger(isPreferred));
+    contentValues.put(RadioSQLContract.Columns.COLUMN_DOMINANT_COLOR, dominantColor);
+    contentValues.put(RadioSQLContract.Columns.COLUMN_SOURCE_HASH, sourceHash);
     return contentValues;
   }
 
   @NonNull
   public MediaMetadataCompat.Builder getMediaMetadataBuilder() {
-    final Bitmap icon = getIcon();
+    final Bitmap icon = getIcon(IconStore.ICON_SIZE);
     return new MediaMetadataCompat.Builder()
       .putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, icon)
       .putBitmap(MediaMetadataCompat.METADATA_KEY_ART, icon)
@@ -360,9 +457,10 @@ public class Radio {
   public boolean storeIcon(@NonNull Context context) {
     assert icon != null;
     try {
-      iconFile = storeToFile(context, icon, id.toString());
-    } catch (FileNotFoundException fileNotFoundException) {
-      Log.e(LOG_TAG, "storeIcon: internal failure", fileNotFoundException);
+      iconFile = IconStore.store(context, icon);
+      dominantColor = getDominantColor(icon);
+    } catch (IOException iOException) {
+      Log.e(LOG_TAG, "storeIcon: internal failure", iOException);
       return false;
     }
     return true;
@@ -383,8 +481,23 @@ public class Radio {
       (textOnly ? "" : marshall(iconToBase64String()));
   }
 
+  // Stored icon is PNG, read as is
   @NonNull
   private String iconToBase64String() {
+    final File file = IconStore.getFile(iconFile, IconStore.ICON_SIZE);
+    if (file != null) {
+      try (FileInputStream fileInputStream = new FileInputStream(file)) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int length;
+        while ((length = fileInputStream.read(buffer)) > 0) {
+          baos.write(buffer, 0, length);
+        }
+        return Base64.encodeToString(baos.toByteArray(), Base64.DEFAULT);
+      } catch (IOException iOException) {
+        Log.e(LOG_TAG, "iconToBase64String: icon file read failure", iOException);
+      }
+    }
     final ByteArrayOutputStream baos = new ByteArrayOutputStream();
     getIcon().compress(Bitmap.CompressFormat.PNG, 100, baos);
     return Base64.encodeToString(baos.toByteArray(), Base64.DEFAULT);
@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import android.graphics.Bitmap;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.watea.radio_upnp.service.RadioURL;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Versioned radio library export, written and read as a stream.
+// JSON Lines: a header line, then one line per radio.
+// Icons are referenced by path, relative to export URL.
+// Version 2: index of radio hashes, export of selected radios by pages.
+public class RadioExport {
+  public static final int VERSION = 2;
+  public static final String CONTENT_TYPE = "application/x-ndjson";
+  // Relative to export path
+  public static final String INDEX_PATH = "index";
+  // Query parameter for selected radios
+  public static final String IDS = "ids";
+  // Returned by importFrom() if manifest is not supported
+  public static final int UNSUPPORTED = -1;
+  private static final String IDS_SEPARATOR = ",";
+  private static final String LOG_TAG = RadioExport.class.getName();
+  private static final String FORMAT_NAME = "RadioUpnp";
+  private static final String FORMAT = "format";
+  private static final String VERSION_KEY = "version";
+  private static final String URL_KEY = "url";
+  private static final String NAME = "name";
+  private static final String WEB_PAGE_URL = "webPageUrl";
+  private static final String IS_PREFERRED = "isPreferred";
+  private static final String ICON = "icon";
+  private static final String ID = "id";
+  private static final String HASH = "hash";
+  // Radios are stored by chunks while reading; also page size
+  private static final int CHUNK_SIZE = 32;
+  private static final int ICON_FETCHERS = 4;
+  private static final int PAGE_TRY = 3;
+  private static final int PAGE_RETRY_DELAY = 2000; // ms
+
+  // To prevent someone from accidentally instantiating the class
+  private RadioExport() {
+  }
+
+  // Small description of an export, sent by UPnP
+  @NonNull
+  public static String getManifest(@NonNull String url) {
+    try {
+      return getHeader().put(URL_KEY, url).toString();
+    } catch (JSONException jSONException) {
+      Log.e(LOG_TAG, "getManifest: internal failure", jSONException);
+      return "";
+    }
+  }
+
+  // Blocking; version 2 exports are synchronized, others read as a whole.
+  // Shall not be called on database writer, radios are written on it by chunks.
+  // Returns number of radios added or updated, UNSUPPORTED if manifest is not supported.
+  public static int importFrom(@NonNull String manifest, @NonNull RadioLibrary radioLibrary)
+    throws IOException {
+    final JSONObject jSONObject;
+    final URL url;
+    try {
+      jSONObject = new JSONObject(manifest);
+      url = isSupported(jSONObject) ? new URL(jSONObject.getString(URL_KEY)) : null;
+    } catch (JSONException | IOException exception) {
+      Log.i(LOG_TAG, "importFrom: unsupported manifest", exception);
+      return UNSUPPORTED;
+    }
+    if (url == null) {
+      return UNSUPPORTED;
+    }
+    return (jSONObject.optInt(VERSION_KEY) >= 2) ?
+      synchronize(url, radioLibrary) : read(url, radioLibrary);
+  }
+
+  // Content hash, on exported fields and icon file.
+  // Icons are re-encoded on import, so imported radios keep the hash of their source.
+  @NonNull
+  public static String getHash(@NonNull Radio radio) {
+    final URL webPageUrl = radio.getWebPageURL();
+    try {
+      final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+      messageDigest.update((radio.getName() + "\n" +
+        radio.getURL() + "\n" +
+        ((webPageUrl == null) ? "" : webPageUrl.toString()) + "\n" +
+        radio.isPreferred() + "\n").getBytes(StandardCharsets.UTF_8));
+      try (InputStream inputStream = new FileInputStream(radio.getIconFile())) {
+        final byte[] buffer = new byte[8192];
+        int length;
+        while ((length = inputStream.read(buffer)) > 0) {
+          messageDigest.update(buffer, 0, length);
+        }
+      } catch (IOException iOException) {
+        Log.i(LOG_TAG, "getHash: no icon for " + radio.getName());
+      }
+      final StringBuilder hash = new StringBuilder();
+      for (byte b : messageDigest.digest()) {
+        hash.append(String.format("%02x", b));
+      }
+      return hash.toString();
+    } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+      // Never happens, SHA-256 is mandatory
+      throw new IllegalStateException(noSuchAlgorithmException);
+    }
+  }
+
+  // Id and hash of all radios
+  public static void writeIndex(@NonNull RadioLibrary radioLibrary, @NonNull Writer writer)
+    throws IOException {
+    try {
+      writer.write(getHeader().toString());
+      writer.write('\n');
+      for (Long radioId : radioLibrary.getAllRadioIds()) {
+        final Radio radio = radioLibrary.getFrom(radioId);
+        if (radio != null) {
+          writer.write(new JSONObject()
+            .put(ID, radioId)
+            .put(URL_KEY, radio.getURL().toString())
+            .put(HASH, getHash(radio))
+            .toString());
+          writer.write('\n');
+        }
+      }
+    } catch (JSONException jSONException) {
+      throw new IOException("writeIndex: JSON failure", jSONException);
+    }
+    writer.flush();
+  }
+
+  // All radios if radioIds is null
+  public static void write(
+    @NonNull RadioLibrary radioLibrary, @NonNull Writer writer, @Nullable List<Long> radioIds)
+    throws IOException {
+    try {
+      writer.write(getHeader().toString());
+      writer.write('\n');
+      for (Long radioId : (radioIds == null) ? radioLibrary.getAllRadioIds() : radioIds) {
+        final Radio radio = radioLibrary.getFrom(radioId);
+        if (radio != null) {
+          final URL webPageUrl = radio.getWebPageURL();
+          writer.write(new JSONObject()
+            .put(ID, radioId)
+            .put(NAME, radio.getName())
+            .put(URL_KEY, radio.getURL().toString())
+            .putOpt(WEB_PAGE_URL, (webPageUrl == null) ? null : webPageUrl.toString())
+            .put(IS_PREFERRED, radio.isPreferred())
+            .put(ICON, radio.getIconFile().getName())
+            .put(HASH, getHash(radio))
+            .toString());
+          writer.write('\n');
+        }
+      }
+    } catch (JSONException jSONException) {
+      throw new IOException("write: JSON failure", jSONException);
+    }
+    writer.flush();
+  }
+
+  @NonNull
+  public static List<Long> parseIds(@NonNull String ids) {
+    final List<Long> radioIds = new Vector<>();
+    for (String id : ids.split(IDS_SEPARATOR)) {
+      try {
+        radioIds.add(Long.valueOf(id));
+      } catch (NumberFormatException numberFormatException) {
+        Log.i(LOG_TAG, "parseIds: bad id " + id);
+      }
+    }
+    return radioIds;
+  }
+
+  // Blocking, radios are added to library by chunks.
+  // Returns number of radios added.
+  private static int read(@NonNull URL url, @NonNull RadioLibrary radioLibrary)
+    throws IOException {
+    final HttpURLConnection httpURLConnection = new RadioURL(url).getActualHttpURLConnection();
+    final URL baseUrl = httpURLConnection.getURL();
+    final ExecutorService executorService = Executors.newFixedThreadPool(ICON_FETCHERS);
+    int count = 0;
+    try (BufferedReader bufferedReader = new BufferedReader(
+      new InputStreamReader(httpURLConnection.getInputStream(), StandardCharsets.UTF_8))) {
+      final String header = bufferedReader.readLine();
+      if ((header == null) || !isSupported(new JSONObject(header))) {
+        throw new IOException("read: unsupported export format");
+      }
+      final List<JSONObject> chunk = new Vector<>();
+      String line;
+      do {
+        line = bufferedReader.readLine();
+        if ((line != null) && !line.isEmpty()) {
+          chunk.add(new JSONObject(line));
+        }
+        if ((chunk.size() >= CHUNK_SIZE) || ((line == null) && !chunk.isEmpty())) {
+          count += add(chunk, baseUrl, radioLibrary, executorService, null);
+          chunk.clear();
+        }
+      } while (line != null);
+    } catch (JSONException jSONException) {
+      throw new IOException("read: JSON failure", jSONException);
+    } catch (InterruptedException interruptedException) {
+      throw new IOException("read: interrupted", interruptedException);
+    } finally {
+      executorService.shutdown();
+    }
+    Log.d(LOG_TAG, "Radios read: " + count);
+    return count;
+  }
+
+  // Only missing or changed radios are transferred, by pages.
+  // Synchronized pages are kept in case of failure, so next call resumes.
+  // Returns number of radios added or updated.
+  private static int synchronize(@NonNull URL url, @NonNull RadioLibrary radioLibrary)
+    throws IOException {
+    // Local radios by stream URL
+    final Map<String, Radio> localRadios = new Hashtable<>();
+    for (Long radioId : radioLibrary.getAllRadioIds()) {
+      final Radio radio = radioLibrary.getFrom(radioId);
+      if (radio != null) {
+        localRadios.put(radio.getURL().toString(), radio);
+      }
+    }
+    // Remote id => local id for changed radios
+    final Map<Long, Long> changedRadioIds = new Hashtable<>();
+    final List<Long> wantedRadioIds = new Vector<>();
+    for (JSONObject jSONObject : readLines(new URL(url + "/" + INDEX_PATH))) {
+      try {
+        final Long remoteId = jSONObject.getLong(ID);
+        final Radio localRadio = localRadios.get(jSONObject.getString(URL_KEY));
+        if (localRadio == null) {
+          wantedRadioIds.add(remoteId);
+        } else if (!isSynchronized(localRadio, jSONObject.getString(HASH))) {
+          wantedRadioIds.add(remoteId);
+          changedRadioIds.put(remoteId, localRadio.getId());
+        }
+      } catch (JSONException jSONException) {
+        Log.i(LOG_TAG, "synchronize: bad index entry", jSONException);
+      }
+    }
+    Log.d(LOG_TAG, "Radios to synchronize: " + wantedRadioIds.size());
+    final ExecutorService executorService = Executors.newFixedThreadPool(ICON_FETCHERS);
+    int count = 0;
+    try {
+      for (int index = 0; index < wantedRadioIds.size(); index += CHUNK_SIZE) {
+        final URL pageUrl = new URL(url + "?" + IDS + "=" + TextUtils.join(IDS_SEPARATOR,
+          wantedRadioIds.subList(index, Math.min(index + CHUNK_SIZE, wantedRadioIds.size()))));
+        List<JSONObject> page = null;
+        for (int pageTry = 1; page == null; pageTry++) {
+          try {
+            page = readLines(pageUrl);
+          } catch (IOException iOException) {
+            if (pageTry >= PAGE_TRY) {
+              throw iOException;
+            }
+            Log.d(LOG_TAG, "synchronize: page failed, retry", iOException);
+            Thread.sleep(PAGE_RETRY_DELAY);
+          }
+        }
+        count += add(page, pageUrl, radioLibrary, executorService, changedRadioIds);
+      }
+    } catch (InterruptedException interruptedException) {
+      throw new IOException("synchronize: interrupted", interruptedException);
+    } finally {
+      executorService.shutdown();
+    }
+    Log.d(LOG_TAG, "Radios synchronized: " + count);
+    return count;
+  }
+
+  // Whole answer, header excluded
+  @NonNull
+  private static List<JSONObject> readLines(@NonNull URL url) throws IOException {
+    final List<JSONObject> lines = new Vector<>();
+    try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
+      new RadioURL(url).getActualHttpURLConnection().getInputStream(),
+      StandardCharsets.UTF_8))) {
+      final String header = bufferedReader.readLine();
+      if ((header == null) || !isSupported(new JSONObject(header))) {
+        throw new IOException("readLines: unsupported export format");
+      }
+      String line;
+      while ((line = bufferedReader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          lines.add(new JSONObject(line));
+        }
+      }
+    } catch (JSONException jSONException) {
+      throw new IOException("readLines: JSON failure", jSONException);
+    }
+    return lines;
+  }
+
+  // Local radio is unchanged on source since imported, or is a copy
+  private static boolean isSynchronized(@NonNull Radio localRadio, @NonNull String hash) {
+    return hash.equals(localRadio.getSourceHash()) || hash.equals(getHash(localRadio));
+  }
+
+  @NonNull
+  private static JSONObject getHeader() throws JSONException {
+    return new JSONObject().put(FORMAT, FORMAT_NAME).put(VERSION_KEY, VERSION);
+  }
+
+  // Newer versions are refused
+  private static boolean isSupported(@NonNull JSONObject header) {
+    return FORMAT_NAME.equals(header.optString(FORMAT)) &&
+      (header.optInt(VERSION_KEY, Integer.MAX_VALUE) <= VERSION);
+  }
+
+  // Icons are fetched in parallel.
+  // Radios found in changedRadioIds replace according local radio.
+  private static int add(
+    @NonNull List<JSONObject> chunk,
+    @NonNull URL baseUrl,
+    @NonNull RadioLibrary radioLibrary,
+    @NonNull ExecutorService executorService,
+    @Nullable Map<Long, Long> changedRadioIds) throws InterruptedException, IOException {
+    final List<Callable<Radio>> fetchers = new Vector<>();
+    for (JSONObject jSONObject : chunk) {
+      fetchers.add(() -> {
+        final String webPageUrl = jSONObject.optString(WEB_PAGE_URL);
+        final Bitmap icon =
+          new RadioURL(new URL(baseUrl, jSONObject.getString(ICON))).getBitmap();
+        if (icon == null) {
+          throw new IOException("Icon not found for: " + jSONObject.getString(NAME));
+        }
+        final Radio radio = new Radio(
+          jSONObject.getString(NAME),
+          new URL(jSONObject.getString(URL_KEY)),
+          webPageUrl.isEmpty() ? null : new URL(webPageUrl),
+          jSONObject.optBoolean(IS_PREFERRED),
+          icon);
+        radio.setSourceHash(jSONObject.optString(HASH, null));
+        final Long localId = (changedRadioIds == null) ?
+          null : changedRadioIds.get(jSONObject.optLong(ID, -1));
+        if (localId != null) {
+          radio.setId(localId);
+        }
+        return radio;
+      });
+    }
+    final List<Radio> updatedRadios = new Vector<>();
+    final List<Radio> addedRadios = new Vector<>();
+    for (Future<Radio> future : executorService.invokeAll(fetchers)) {
+      try {
+        final Radio radio = future.get();
+        ((radio.getId() < 0) ? addedRadios : updatedRadios).add(radio);
+      } catch (ExecutionException executionException) {
+        Log.e(LOG_TAG, "add: a radio failed to be read", executionException);
+      }
+    }
+    // Only the chunk writes run on database writer
+    try {
+      return radioLibrary.write(() -> store(radioLibrary, updatedRadios, addedRadios), null).get();
+    } catch (ExecutionException executionException) {
+      throw new IOException("add: database failure", executionException.getCause());
+    }
+  }
+
+  // Database writer thread
+  private static int store(
+    @NonNull RadioLibrary radioLibrary,
+    @NonNull List<Radio> updatedRadios,
+    @NonNull List<Radio> addedRadios) {
+    int count = 0;
+    for (Radio radio : updatedRadios) {
+      if (radioLibrary.update(radio)) {
+        count++;
+      }
+    }
+    return count + (radioLibrary.addAll(addedRadios) ? addedRadios.size() : 0);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+// Result of a radio stream probe
+public class RadioHealth {
+  private final boolean isReachable;
+  private final int latency; // ms
+  private final int rate; // kbit/s, 0 if unknown
+  @Nullable
+  private final String contentType;
+  private final long time;
+
+  public RadioHealth(boolean isReachable, int latency, int rate, @Nullable String contentType) {
+    this(isReachable, latency, rate, contentType, System.currentTimeMillis());
+  }
+
+  private RadioHealth(
+    boolean isReachable, int latency, int rate, @Nullable String contentType, long time) {
+    this.isReachable = isReachable;
+    this.latency = latency;
+    this.rate = rate;
+    this.contentType = contentType;
+    this.time = time;
+  }
+
+  // Cursor shall be on health table
+  public RadioHealth(@NonNull Cursor cursor) {
+    this(
+      cursor.getInt(cursor.getColumnIndexOrThrow(
+        RadioSQLContract.HealthColumns.COLUMN_IS_REACHABLE)) != 0,
+      cursor.getInt(cursor.getColumnIndexOrThrow(RadioSQLContract.HealthColumns.COLUMN_LATENCY)),
+      cursor.getInt(cursor.getColumnIndexOrThrow(RadioSQLContract.HealthColumns.COLUMN_RATE)),
+      cursor.getString(
+        cursor.getColumnIndexOrThrow(RadioSQLContract.HealthColumns.COLUMN_CONTENT_TYPE)),
+      cursor.getLong(cursor.getColumnIndexOrThrow(RadioSQLContract.HealthColumns.COLUMN_TIME)));
+  }
+
+  public boolean isReachable() {
+    return isReachable;
+  }
+
+  public int getLatency() {
+    return latency;
+  }
+
+  public int getRate() {
+    return rate;
+  }
+
+  @Nullable
+  public String getContentType() {
+    return contentType;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  @NonNull
+  public ContentValues toContentValues(@NonNull Long radioId) {
+    final ContentValues contentValues = new ContentValues();
+    contentValues.put(RadioSQLContract.HealthColumns.COLUMN_RADIO_ID, radioId);
+    contentValues.put(RadioSQLContract.HealthColumns.COLUMN_IS_REACHABLE, isReachable ? 1 : 0);
+    contentValues.put(RadioSQLContract.HealthColumns.COLUMN_LATENCY, latency);
+    contentValues.put(RadioSQLContract.HealthColumns.COLUMN_RATE, rate);
+    contentValues.put(RadioSQLContract.HealthColumns.COLUMN_CONTENT_TYPE, contentType);
+    contentValues.put(RadioSQLContract.HealthColumns.COLUMN_TIME, time);
+    return contentValues;
+  }
+}
\ No newline at end of file
@@ -23,28 +23,94 @@
 
 package com.watea.radio_upnp.model;
 
+import static com.watea.radio_upnp.model.RadioSQLContract.DATABASE_VERSION;
 import static com.watea.radio_upnp.model.RadioSQLContract.SQL_CREATE_ENTRIES;
+import static com.watea.radio_upnp.model.RadioSQLContract.SQL_CREATE_HEALTH_ENTRIES;
+import static com.watea.radio_upnp.model.RadioSQLContract.SQL_CREATE_POSITION_INDEX;
+import static com.watea.radio_upnp.model.RadioSQLContract.SQL_CREATE_PREFERRED_INDEX;
 import static com.watea.radio_upnp.model.RadioSQLContract.SQL_DELETE_ENTRIES;
+import static com.watea.radio_upnp.model.RadioSQLContract.SQL_DELETE_HEALTH_ENTRIES;
+import static com.watea.radio_upnp.model.RadioSQLContract.SQL_MIGRATIONS;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.media.MediaMetadataCompat;
+import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RadioLibrary {
   private static final String LOG_TAG = RadioLibrary.class.getName();
   private static final String SPACER = "#";
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  private static final String[] INSERT_COLUMNS = {
+    RadioSQLContract.Columns.COLUMN_NAME,
+    RadioSQLContract.Columns.COLUMN_ICON,
+    RadioSQLContract.Columns.COLUMN_TYPE,
+    RadioSQLContract.Columns.COLUMN_LANGUAGE,
+    RadioSQLContract.Columns.COLUMN_URL,
+    RadioSQLContract.Columns.COLUMN_WEB_PAGE,
+    RadioSQLContract.Columns.COLUMN_QUALITY,
+    RadioSQLContract.Columns.COLUMN_IS_PREFERRED,
+    RadioSQLContract.Columns.COLUMN_POSITION,
+    RadioSQLContract.Columns.COLUMN_SOURCE_HASH};
+  private static final String SQL_INSERT =
+    "INSERT INTO " + RadioSQLContract.Columns.TABLE_RADIO +
+      " (" + TextUtils.join(",", INSERT_COLUMNS) + ") VALUES (" +
+      TextUtils.join(",", Collections.nCopies(INSERT_COLUMNS.length, "?")) + ")";
+  private static final String SQL_UPDATE_POSITION =
+    "UPDATE " + RadioSQLContract.Columns.TABLE_RADIO +
+      " SET " + RadioSQLContract.Columns.COLUMN_POSITION + " = ?" +
+      " WHERE " + RadioSQLContract.Columns._ID + " = ?";
+  // Below, positions are rebalanced in the background
+  private static final int POSITION_GAP_MIN = 4;
+  // Single writer, process wide: database writes are run in order.
+  // Reads run concurrently, database is in WAL mode.
+  private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+  private static final int READERS = 2;
+  private static final ExecutorService readExecutor = Executors.newFixedThreadPool(READERS);
+  // Incremented on each database change that may change radio order or preferred set.
+  // Process wide, as several libraries may be open on the same database.
+  private static final AtomicInteger orderVersion = new AtomicInteger();
+  private static final String SQL_UPDATE_ICON =
+    "UPDATE " + RadioSQLContract.Columns.TABLE_RADIO +
+      " SET " + RadioSQLContract.Columns.COLUMN_ICON + " = ?, " +
+      RadioSQLContract.Columns.COLUMN_DOMINANT_COLOR + " = ?" +
+      " WHERE " + RadioSQLContract.Columns._ID + " = ?";
+  // Radios already read, any database change on a radio removes it.
+  // Process wide, as several libraries may be open on the same database.
+  private static final Map<Long, Radio> radios = new Hashtable<>();
+  private static int cacheHitCount = 0;
+  private static int cacheMissCount = 0;
+  // Incremented on each invalidation, so that concurrent reads don't store stale radios
+  private static int cacheVersion = 0;
   private final List<Listener> listeners = new Vector<>();
+  // Listener events waiting to be told on main thread
+  private final List<Consumer<Listener>> pendingEvents = new Vector<>();
   @NonNull
   private final SQLiteDatabase radioDataBase;
   @NonNull
@@ -52,10 +118,71 @@ public class RadioLibrary {
   // Current managed radio
   @Nullable
   private Long currentRadioId = null;
+  // Ordered radio ids for neighbour lookup, built on demand
+  @Nullable
+  private NeighbourIndex allIndex = null;
+  @Nullable
+  private NeighbourIndex preferredIndex = null;
 
   public RadioLibrary(@NonNull Context context) {
     this.context = context;
     radioDataBase = new RadioDbSQLHelper(this.context).getWritableDatabase();
+    writeExecutor.execute(this::computeDominantColors);
+  }
+
+  // Asynchronous API.
+  // Task is run on database writer (or readers); result is passed on main thread.
+  // Listeners are told as for synchronous calls.
+  @NonNull
+  public <T> Future<T> write(@NonNull Callable<T> task, @Nullable Consumer<T> callback) {
+    return submit(writeExecutor, task, callback);
+  }
+
+  @NonNull
+  public <T> Future<T> read(@NonNull Callable<T> task, @Nullable Consumer<T> callback) {
+    return submit(readExecutor, task, callback);
+  }
+
+  public void addAsync(@NonNull Radio radio, @Nullable Consumer<Boolean> callback) {
+    writeBoolean(() -> add(radio), callback);
+  }
+
+  public void addAllAsync(@NonNull List<Radio> radios, @Nullable Consumer<Boolean> callback) {
+    writeBoolean(() -> addAll(radios), callback);
+  }
+
+  public void importFromAsync(
+    @NonNull String importString, @Nullable Consumer<Boolean> callback) {
+    writeBoolean(() -> importFrom(importString), callback);
+  }
+
+  public void updateAsync(@NonNull Radio radio, @Nullable Consumer<Boolean> callback) {
+    writeBoolean(() -> update(radio), callback);
+  }
+
+  public void deleteFromAsync(@NonNull Long radioId, @Nullable Consumer<Boolean> callback) {
+    writeBoolean(() -> deleteFrom(radioId), callback);
+  }
+
+  public void setPreferredAsync(
+    @NonNull Long radioId, @NonNull Boolean isPreferred, @Nullable Consumer<Boolean> callback) {
+    writeBoolean(() -> setPreferred(radioId, isPreferred), callback);
+  }
+
+  public void setHealthsAsync(
+    @NonNull Map<Long, RadioHealth> healths, @Nullable Consumer<Boolean> callback) {
+    writeBoolean(() -> {
+      setHealths(healths);
+      return true;
+    }, callback);
+  }
+
+  public void moveRangeAsync(
+    @NonNull List<Long> radioIds,
+    @Nullable Long previousRadioId,
+    @Nullable Long nextRadioId,
+    @Nullable Consumer<Boolean> callback) {
+    writeBoolean(() -> moveRange(radioIds, previousRadioId, nextRadioId), callback);
   }
 
   public boolean isCurrentRadio(@NonNull Radio radio) {
@@ -63,7 +190,10 @@ public class RadioLibrary {
   }
 
   public void close() {
-    radioDataBase.close();
+    Log.d(LOG_TAG, "Radio cache hits/misses: " + cacheHitCount + "/" + cacheMissCount);
+    // Cache is kept, it may be used by other libraries.
+    // Closed on database writer, so that pending writes are done first.
+    writeExecutor.execute(radioDataBase::close);
   }
 
   public boolean isOpen() {
@@ -71,7 +201,7 @@ public class RadioLibrary {
   }
 
   public boolean updateFrom(@NonNull Long radioId, @NonNull ContentValues values) {
-    return (radioDataBase.update(
+    final boolean result = (radioDataBase.update(
       // The table to query
       RadioSQLContract.Columns.TABLE_RADIO,
       // Values for columns
@@ -80,10 +210,24 @@ public class RadioLibrary {
       RadioSQLContract.Columns._ID + " = ?",
       // The values for the WHERE clause
       new String[]{radioId.toString()}) > 0);
+    invalidate(radioId);
+    return result;
   }
 
+  // Thread safe.
+  // Returned radio is a copy, so that unsaved edits never reach the cache.
   @Nullable
   public Radio getFrom(@NonNull Long radioId) {
+    final int version;
+    synchronized (radios) {
+      final Radio radio = radios.get(radioId);
+      if (radio != null) {
+        cacheHitCount++;
+        return new Radio(radio);
+      }
+      cacheMissCount++;
+      version = cacheVersion;
+    }
     final Cursor cursor = radioDataBase.query(
       // The table to query
       RadioSQLContract.Columns.TABLE_RADIO,
@@ -103,6 +247,11 @@ public class RadioLibrary {
     try {
       if (cursor.moveToNext()) {
         radio = new Radio(cursor);
+        synchronized (radios) {
+          if (version == cacheVersion) {
+            radios.put(radioId, new Radio(radio));
+          }
+        }
       }
     } catch (MalformedURLException malformedURLException) {
       Log.e(LOG_TAG, "getFrom: internal failure", malformedURLException);
@@ -142,7 +291,12 @@ public class RadioLibrary {
       RadioSQLContract.Columns._ID + " = ?",
       // The values for the WHERE clause
       new String[]{radioId.toString()}) > 0);
+    invalidate(radioId);
     if (result) {
+      radioDataBase.delete(
+        RadioSQLContract.HealthColumns.TABLE_HEALTH,
+        RadioSQLContract.HealthColumns.COLUMN_RADIO_ID + " = ?",
+        new String[]{radioId.toString()});
       tellListeners(listener -> listener.onRemove(radioId));
     }
     return result;
@@ -162,7 +316,8 @@ public class RadioLibrary {
   public boolean add(@NonNull Radio radio) {
     final ContentValues contentValues = radio.toContentValues();
     // Position = last
-    contentValues.put(RadioSQLContract.Columns.COLUMN_POSITION, getMaxPosition() + 1);
+    contentValues.put(
+      RadioSQLContract.Columns.COLUMN_POSITION, getMaxPosition() + RadioSQLContract.POSITION_GAP);
     radio.setId(radioDataBase.insert(RadioSQLContract.Columns.TABLE_RADIO, null, contentValues));
     // Success? => store icon file
     final Long radioId = radio.getId();
@@ -171,26 +326,49 @@ public class RadioLibrary {
       if (radio.storeIcon(context)) {
         contentValues.clear();
         contentValues.put(RadioSQLContract.Columns.COLUMN_ICON, radio.getIconFile().getPath());
+        contentValues.put(
+          RadioSQLContract.Columns.COLUMN_DOMINANT_COLOR, radio.getDominantColor());
         if (!updateFrom(radioId, contentValues)) {
           Log.e(LOG_TAG, "add: internal failure storing icon path");
         }
       }
+      // Radio is read back on first use, instance may hold icon bitmap
+      invalidate(radioId);
       return true;
     }
     return false;
   }
 
+  // Radio at direction from radioId, in all radios, circular.
+  // Null if radioId is unknown.
   @Nullable
   public Long get(@NonNull Long radioId, int direction) {
-    final List<Long> ids = getAllRadioIds();
-    return ids.contains(radioId) ?
-      ids.get((ids.size() + ids.indexOf(radioId) + direction) % ids.size()) :
-      null;
+    return get(radioId, direction, false);
+  }
+
+  // Same, within preferred radios if isPreferredOnly
+  @Nullable
+  public Long get(@NonNull Long radioId, int direction, boolean isPreferredOnly) {
+    synchronized (orderVersion) {
+      final int version = orderVersion.get();
+      NeighbourIndex neighbourIndex = isPreferredOnly ? preferredIndex : allIndex;
+      if ((neighbourIndex == null) || (neighbourIndex.version != version)) {
+        neighbourIndex = new NeighbourIndex(
+          isPreferredOnly ? getPreferredRadioIds() : getAllRadioIds(), version);
+        if (isPreferredOnly) {
+          preferredIndex = neighbourIndex;
+        } else {
+          allIndex = neighbourIndex;
+        }
+      }
+      return neighbourIndex.get(radioId, direction);
+    }
   }
 
   public boolean setPreferred(@NonNull Long radioId, @NonNull Boolean isPreferred) {
     final ContentValues values = new ContentValues();
-    values.put(RadioSQLContract.Columns.COLUMN_IS_PREFERRED, isPreferred.toString());
+    values.put(
+      RadioSQLContract.Columns.COLUMN_IS_PREFERRED, RadioSQLContract.toInteger(isPreferred));
     if (updateFrom(radioId, values)) {
       Radio radio = getFrom(radioId);
       assert radio != null;
@@ -200,17 +378,94 @@ public class RadioLibrary {
     return false;
   }
 
-  public boolean move(@NonNull Long fromRadioId, @NonNull Long toRadioId) {
-    final ContentValues fromPosition = positionContentValuesOf(fromRadioId);
-    final ContentValues toPosition = positionContentValuesOf(toRadioId);
-    final boolean result =
-      updateFrom(fromRadioId, toPosition) && updateFrom(toRadioId, fromPosition);
+  // Radios are placed in order between previousRadio and nextRadio (null for ends),
+  // in one transaction; only moved radios are updated.
+  // Intended for multi-step drags: call once on drop with final neighbours.
+  public boolean moveRange(
+    @NonNull List<Long> radioIds, @Nullable Long previousRadioId, @Nullable Long nextRadioId) {
+    final boolean result = setPositions(radioIds, previousRadioId, nextRadioId);
     if (result) {
-      tellListeners(listener -> listener.onMove(fromRadioId, toRadioId));
+      tellListeners(listener -> listener.onMoveRange(radioIds));
     }
     return result;
   }
 
+  // Positions are rewritten with regular gaps, in one transaction; order is kept.
+  // Radio positions are not cached, so no invalidation.
+  public void rebalance() {
+    final SQLiteStatement positionStatement =
+      radioDataBase.compileStatement(SQL_UPDATE_POSITION);
+    radioDataBase.beginTransaction();
+    try {
+      int position = 0;
+      for (Long radioId : getAllRadioIds()) {
+        position += RadioSQLContract.POSITION_GAP;
+        positionStatement.clearBindings();
+        positionStatement.bindLong(1, position);
+        positionStatement.bindLong(2, radioId);
+        positionStatement.executeUpdateDelete();
+      }
+      radioDataBase.setTransactionSuccessful();
+    } finally {
+      radioDataBase.endTransaction();
+      positionStatement.close();
+    }
+  }
+
+  // Probe results, in one transaction
+  public void setHealths(@NonNull Map<Long, RadioHealth> healths) {
+    radioDataBase.beginTransaction();
+    try {
+      for (Map.Entry<Long, RadioHealth> entry : healths.entrySet()) {
+        radioDataBase.insertWithOnConflict(
+          RadioSQLContract.HealthColumns.TABLE_HEALTH,
+          null,
+          entry.getValue().toContentValues(entry.getKey()),
+          SQLiteDatabase.CONFLICT_REPLACE);
+      }
+      radioDataBase.setTransactionSuccessful();
+    } finally {
+      radioDataBase.endTransaction();
+    }
+    tellListeners(Listener::onHealthChange);
+  }
+
+  // Known probe results per radio id
+  @NonNull
+  public Map<Long, RadioHealth> getHealths() {
+    final Cursor cursor = radioDataBase.query(
+      // The table to query
+      RadioSQLContract.HealthColumns.TABLE_HEALTH,
+      // The columns to return
+      null,
+      // The columns for the WHERE clause
+      null,
+      // The values for the WHERE clause
+      null,
+      // don't group the rows
+      null,
+      // don't filter by row groups
+      null,
+      // The sort order
+      null);
+    final int radioIdColumnIndex =
+      cursor.getColumnIndexOrThrow(RadioSQLContract.HealthColumns.COLUMN_RADIO_ID);
+    final Map<Long, RadioHealth> healths = new Hashtable<>();
+    while (cursor.moveToNext()) {
+      healths.put(cursor.getLong(radioIdColumnIndex), new RadioHealth(cursor));
+    }
+    cursor.close();
+    return healths;
+  }
+
+  public int getCacheHitCount() {
+    return cacheHitCount;
+  }
+
+  public int getCacheMissCount() {
+    return cacheMissCount;
+  }
+
   // Add if not already there
   public void addListener(@NonNull Listener listener) {
     listeners.add(listener);
@@ -245,27 +500,273 @@ public class RadioLibrary {
   }
 
   // Symmetrical from export().
+  // Blocking, shall not be called on main thread.
   // Returns true if some radios have been imported.
   public boolean importFrom(@NonNull String importString) {
-    boolean result = false;
-    if (!importString.isEmpty()) {
+    if (importString.isEmpty()) {
+      return false;
+    }
+    final ExecutorService executorService = newExecutorService();
+    try {
+      // Icon decoding is the heavy part
+      final List<Callable<Radio>> parsers = new Vector<>();
       for (String radioString : importString.split(SPACER)) {
+        parsers.add(() -> new Radio(radioString));
+      }
+      final List<Radio> importedRadios = new Vector<>();
+      for (Future<Radio> future : executorService.invokeAll(parsers)) {
         try {
-          result = add(new Radio(radioString)) || result;
-        } catch (MalformedURLException malformedURLException) {
-          Log.e(LOG_TAG, "importFrom: a radio failed to be imported", malformedURLException);
+          importedRadios.add(future.get());
+        } catch (ExecutionException executionException) {
+          Log.e(LOG_TAG, "importFrom: a radio failed to be imported", executionException);
         }
       }
+      return addAll(importedRadios, executorService);
+    } catch (InterruptedException interruptedException) {
+      Log.e(LOG_TAG, "importFrom: interrupted", interruptedException);
+      return false;
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  // Add radios with icon and store according icons.
+  // Blocking, shall not be called on main thread.
+  // Radios are inserted in one transaction; listeners are told once, on main thread.
+  // Returns true if some radios have been added.
+  public boolean addAll(@NonNull List<Radio> radios) {
+    final ExecutorService executorService = newExecutorService();
+    try {
+      return addAll(radios, executorService);
+    } catch (InterruptedException interruptedException) {
+      Log.e(LOG_TAG, "addAll: interrupted", interruptedException);
+      return false;
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  // Replace radio of same id with radio content, icon included.
+  // Blocking, shall not be called on main thread; listeners are told on main thread.
+  public boolean update(@NonNull Radio radio) {
+    final Long radioId = radio.getId();
+    final boolean result = radio.storeIcon(context) &&
+      updateFrom(radioId, radio.toContentValues());
+    if (result) {
+      tellListeners(listener -> listener.onUpdate(radioId));
     }
     return result;
   }
 
-  // Utility for database update of radio position
+  // Null result is not passed
+  @NonNull
+  private static <T> Future<T> submit(
+    @NonNull ExecutorService executorService,
+    @NonNull Callable<T> task,
+    @Nullable Consumer<T> callback) {
+    return executorService.submit(() -> {
+      final T result = task.call();
+      if ((callback != null) && (result != null)) {
+        handler.post(() -> callback.accept(result));
+      }
+      return result;
+    });
+  }
+
+  // Database failure (closed meanwhile...) is passed as false
+  private void writeBoolean(
+    @NonNull Callable<Boolean> task, @Nullable Consumer<Boolean> callback) {
+    write(() -> {
+      try {
+        return task.call();
+      } catch (SQLiteException | IllegalStateException exception) {
+        Log.e(LOG_TAG, "writeBoolean: database failure", exception);
+        return false;
+      }
+    }, callback);
+  }
+
   @NonNull
-  private ContentValues positionContentValuesOf(@NonNull Long radioId) {
-    final ContentValues contentValues = new ContentValues();
-    contentValues.put(RadioSQLContract.Columns.COLUMN_POSITION, getPositionFrom(radioId));
-    return contentValues;
+  private static ExecutorService newExecutorService() {
+    return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  private boolean addAll(
+    @NonNull List<Radio> addedRadios, @NonNull ExecutorService executorService)
+    throws InterruptedException {
+    final List<Radio> insertedRadios = new Vector<>(addedRadios);
+    try {
+      radioDataBase.beginTransaction();
+      try {
+        insertAll(insertedRadios, executorService);
+        radioDataBase.setTransactionSuccessful();
+      } finally {
+        radioDataBase.endTransaction();
+      }
+    } catch (SQLiteException | IllegalStateException exception) {
+      // Database may have been closed meanwhile
+      Log.e(LOG_TAG, "addAll: database failure", exception);
+      return false;
+    }
+    if (insertedRadios.isEmpty()) {
+      return false;
+    }
+    orderVersion.incrementAndGet();
+    final List<Long> radioIds = new Vector<>();
+    for (Radio radio : insertedRadios) {
+      radioIds.add(radio.getId());
+    }
+    tellListeners(listener -> listener.onAddAll(radioIds));
+    return true;
+  }
+
+  // Shall be called within a transaction.
+  // Radios failing to be inserted are removed from list.
+  private void insertAll(
+    @NonNull List<Radio> importedRadios, @NonNull ExecutorService executorService)
+    throws InterruptedException {
+    final SQLiteStatement insertStatement = radioDataBase.compileStatement(SQL_INSERT);
+    final SQLiteStatement iconStatement = radioDataBase.compileStatement(SQL_UPDATE_ICON);
+    try {
+      // Position = last
+      int position = getMaxPosition();
+      final Iterator<Radio> iterator = importedRadios.iterator();
+      while (iterator.hasNext()) {
+        final Radio radio = iterator.next();
+        final ContentValues contentValues = radio.toContentValues();
+        position += RadioSQLContract.POSITION_GAP;
+        contentValues.put(RadioSQLContract.Columns.COLUMN_POSITION, position);
+        insertStatement.clearBindings();
+        for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+          final String value = contentValues.getAsString(INSERT_COLUMNS[i]);
+          if (value == null) {
+            insertStatement.bindNull(i + 1);
+          } else {
+            insertStatement.bindString(i + 1, value);
+          }
+        }
+        radio.setId(insertStatement.executeInsert());
+        if (radio.getId() < 0) {
+          Log.e(LOG_TAG, "insertAll: internal failure inserting " + radio.getName());
+          iterator.remove();
+        }
+      }
+      // Store icon files
+      final List<Callable<Boolean>> iconWriters = new Vector<>();
+      for (Radio radio : importedRadios) {
+        iconWriters.add(() -> radio.storeIcon(context));
+      }
+      final List<Future<Boolean>> results = executorService.invokeAll(iconWriters);
+      for (int i = 0; i < importedRadios.size(); i++) {
+        final Radio radio = importedRadios.get(i);
+        boolean isStored;
+        try {
+          isStored = results.get(i).get();
+        } catch (ExecutionException executionException) {
+          isStored = false;
+        }
+        if (isStored) {
+          iconStatement.clearBindings();
+          iconStatement.bindString(1, radio.getIconFile().getPath());
+          final Integer dominantColor = radio.getDominantColor();
+          if (dominantColor == null) {
+            iconStatement.bindNull(2);
+          } else {
+            iconStatement.bindLong(2, dominantColor);
+          }
+          iconStatement.bindLong(3, radio.getId());
+          iconStatement.executeUpdateDelete();
+        } else {
+          Log.e(LOG_TAG, "insertAll: internal failure storing icon of " + radio.getName());
+        }
+      }
+    } finally {
+      insertStatement.close();
+      iconStatement.close();
+    }
+  }
+
+  // Database was just created or upgraded, cached radios may belong to a former one
+  private static void invalidateAll() {
+    orderVersion.incrementAndGet();
+    synchronized (radios) {
+      cacheVersion++;
+      radios.clear();
+    }
+  }
+
+  private void invalidate(@NonNull Long... radioIds) {
+    orderVersion.incrementAndGet();
+    synchronized (radios) {
+      cacheVersion++;
+      for (Long radioId : radioIds) {
+        radios.remove(radioId);
+      }
+    }
+  }
+
+  // Moved radios are spread in the gap between neighbours.
+  // If gap is too small, positions are rebalanced first, in the same transaction;
+  // if it gets small, a rebalance is scheduled.
+  private boolean setPositions(
+    @NonNull List<Long> radioIds, @Nullable Long previousRadioId, @Nullable Long nextRadioId) {
+    if (radioIds.isEmpty()) {
+      return true;
+    }
+    boolean isRebalanceNeeded = false;
+    final SQLiteStatement positionStatement =
+      radioDataBase.compileStatement(SQL_UPDATE_POSITION);
+    radioDataBase.beginTransaction();
+    try {
+      int gap = getGap(previousRadioId, nextRadioId, radioIds.size());
+      if (gap < 1) {
+        Log.d(LOG_TAG, "setPositions: no room, rebalance");
+        rebalance();
+        gap = getGap(previousRadioId, nextRadioId, radioIds.size());
+      }
+      // Position before first moved radio
+      int position = (previousRadioId != null) ? getPositionFrom(previousRadioId) :
+        (nextRadioId != null) ? getPositionFrom(nextRadioId) - gap * (radioIds.size() + 1) : 0;
+      for (Long radioId : radioIds) {
+        position += gap;
+        positionStatement.clearBindings();
+        positionStatement.bindLong(1, position);
+        positionStatement.bindLong(2, radioId);
+        if (positionStatement.executeUpdateDelete() < 1) {
+          Log.e(LOG_TAG, "setPositions: internal failure moving " + radioId);
+          return false;
+        }
+      }
+      radioDataBase.setTransactionSuccessful();
+      isRebalanceNeeded = (gap < POSITION_GAP_MIN);
+    } catch (SQLiteException sQLiteException) {
+      Log.e(LOG_TAG, "setPositions: internal failure", sQLiteException);
+      return false;
+    } finally {
+      radioDataBase.endTransaction();
+      positionStatement.close();
+      invalidate(radioIds.toArray(new Long[0]));
+    }
+    if (isRebalanceNeeded) {
+      writeExecutor.execute(() -> {
+        try {
+          rebalance();
+        } catch (SQLiteException | IllegalStateException exception) {
+          // Database may have been closed meanwhile
+          Log.i(LOG_TAG, "rebalance: not done", exception);
+        }
+      });
+    }
+    return true;
+  }
+
+  // Gap between each of count radios placed between neighbours; < 1 if no room.
+  // No bound at ends.
+  private int getGap(@Nullable Long previousRadioId, @Nullable Long nextRadioId, int count) {
+    if ((previousRadioId == null) || (nextRadioId == null)) {
+      return RadioSQLContract.POSITION_GAP;
+    }
+    return (getPositionFrom(nextRadioId) - getPositionFrom(previousRadioId)) / (count + 1);
   }
 
   @NonNull
@@ -279,6 +780,44 @@ public class RadioLibrary {
     return radioIds;
   }
 
+  // Background, for radios stored before dominant color was introduced.
+  // Listeners are told on main thread.
+  private void computeDominantColors() {
+    final List<Long> updatedRadioIds = new Vector<>();
+    try {
+      final List<Long> radioIds = cursorToIdListAndClose(radioDataBase.query(
+        RadioSQLContract.Columns.TABLE_RADIO,
+        new String[]{RadioSQLContract.Columns._ID},
+        RadioSQLContract.Columns.COLUMN_DOMINANT_COLOR + " IS NULL",
+        null,
+        null,
+        null,
+        null));
+      for (Long radioId : radioIds) {
+        final Radio radio = getFrom(radioId);
+        final Bitmap icon = (radio == null) ?
+          null : IconStore.getIcon(radio.getIconFile(), IconStore.SMALL_ICON_SIZE);
+        if (icon != null) {
+          final ContentValues contentValues = new ContentValues();
+          contentValues.put(
+            RadioSQLContract.Columns.COLUMN_DOMINANT_COLOR, Radio.getDominantColor(icon));
+          if (updateFrom(radioId, contentValues)) {
+            updatedRadioIds.add(radioId);
+          }
+        }
+      }
+    } catch (SQLiteException | IllegalStateException exception) {
+      // Database may have been closed meanwhile
+      Log.i(LOG_TAG, "computeDominantColors: interrupted", exception);
+    }
+    if (!updatedRadioIds.isEmpty()) {
+      Log.d(LOG_TAG, "Dominant colors computed: " + updatedRadioIds.size());
+      for (Long radioId : updatedRadioIds) {
+        tellListeners(listener -> listener.onUpdate(radioId));
+      }
+    }
+  }
+
   @NonNull
   private Cursor allIdsQuery() {
     return radioDataBase.query(
@@ -306,9 +845,9 @@ public class RadioLibrary {
       // The columns to return
       new String[]{RadioSQLContract.Columns._ID},
       // The columns for the WHERE clause
-      RadioSQLContract.Columns.COLUMN_IS_PREFERRED + " = ?",
+      RadioSQLContract.Columns.COLUMN_IS_PREFERRED + " = 1",
       // The values for the WHERE clause
-      new String[]{Boolean.toString(true)},
+      null,
       // don't group the rows
       null,
       // don't filter by row groups
@@ -341,12 +880,58 @@ public class RadioLibrary {
     return position;
   }
 
+  // Listeners are told on main thread: at once if called on main thread and nothing is
+  // pending, else events are queued and told in one batch.
   private void tellListeners(@NonNull Consumer<Listener> consumer) {
+    synchronized (pendingEvents) {
+      if ((Looper.myLooper() != Looper.getMainLooper()) || !pendingEvents.isEmpty()) {
+        pendingEvents.add(consumer);
+        if (pendingEvents.size() == 1) {
+          handler.post(this::tellPendingEvents);
+        }
+        return;
+      }
+    }
     for (Listener listener : listeners) {
       consumer.accept(listener);
     }
   }
 
+  private void tellPendingEvents() {
+    final List<Consumer<Listener>> events;
+    synchronized (pendingEvents) {
+      events = new Vector<>(pendingEvents);
+      pendingEvents.clear();
+    }
+    for (Consumer<Listener> event : events) {
+      for (Listener listener : listeners) {
+        event.accept(listener);
+      }
+    }
+  }
+
+  // Radio ids in order, with index by id
+  private static class NeighbourIndex {
+    private final List<Long> radioIds;
+    private final Map<Long, Integer> indexes = new Hashtable<>();
+    private final int version;
+
+    private NeighbourIndex(@NonNull List<Long> radioIds, int version) {
+      this.radioIds = radioIds;
+      this.version = version;
+      for (int i = 0; i < this.radioIds.size(); i++) {
+        indexes.put(this.radioIds.get(i), i);
+      }
+    }
+
+    @Nullable
+    private Long get(@NonNull Long radioId, int direction) {
+      final Integer index = indexes.get(radioId);
+      final int size = radioIds.size();
+      return (index == null) ? null : radioIds.get(((index + direction) % size + size) % size);
+    }
+  }
+
   public interface Listener {
     default void onPreferredChange(@NonNull Radio radio) {
     }
@@ -357,33 +942,61 @@ public class RadioLibrary {
     default void onAdd(@NonNull Long radioId) {
     }
 
+    // Bulk import
+    default void onAddAll(@NonNull List<Long> radioIds) {
+      for (Long radioId : radioIds) {
+        onAdd(radioId);
+      }
+    }
+
     default void onRemove(@NonNull Long radioId) {
     }
 
-    default void onMove(@NonNull Long fromId, @NonNull Long toId) {
+    // Radio content has changed
+    default void onUpdate(@NonNull Long radioId) {
+    }
+
+    // Radios have been placed elsewhere in order
+    default void onMoveRange(@NonNull List<Long> radioIds) {
+    }
+
+    default void onHealthChange() {
     }
   }
 
   private static class RadioDbSQLHelper extends SQLiteOpenHelper {
-    private static final int DATABASE_VERSION = 1;
     private static final String DATABASE_NAME = "Radio.db";
 
     private RadioDbSQLHelper(@NonNull Context context) {
       super(context, DATABASE_NAME, null, DATABASE_VERSION);
+      // Reads don't wait for writes
+      setWriteAheadLoggingEnabled(true);
     }
 
     public void onCreate(@NonNull SQLiteDatabase db) {
+      invalidateAll();
       db.execSQL(SQL_CREATE_ENTRIES);
+      db.execSQL(SQL_CREATE_POSITION_INDEX);
+      db.execSQL(SQL_CREATE_PREFERRED_INDEX);
+      db.execSQL(SQL_CREATE_HEALTH_ENTRIES);
     }
 
+    // Radios are kept; migrations are applied in order, in one transaction
     public void onUpgrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
-      // No version management
-      db.execSQL(SQL_DELETE_ENTRIES);
-      onCreate(db);
+      invalidateAll();
+      for (int version = oldVersion; version < newVersion; version++) {
+        Log.d(LOG_TAG, "Database migration to version " + (version + 1));
+        for (String sql : SQL_MIGRATIONS[version - 1]) {
+          db.execSQL(sql);
+        }
+      }
     }
 
+    // No version management
     public void onDowngrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
-      onUpgrade(db, oldVersion, newVersion);
+      db.execSQL(SQL_DELETE_HEALTH_ENTRIES);
+      db.execSQL(SQL_DELETE_ENTRIES);
+      onCreate(db);
     }
   }
 }
\ No newline at end of file
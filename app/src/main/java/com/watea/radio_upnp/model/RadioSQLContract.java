@@ -25,9 +25,97 @@ package com.watea.radio_upnp.model;
 
 import android.provider.BaseColumns;
 
+import androidx.annotation.NonNull;
+
 public final class RadioSQLContract {
-  static final String SQL_CREATE_ENTRIES =
-    "CREATE TABLE " + Columns.TABLE_RADIO + " (" +
+  // Radio positions are spaced, so that a radio is moved by updating its position only
+  public static final int POSITION_GAP = 1024;
+  // isPreferred: 0 or 1
+  static final String SQL_CREATE_ENTRIES = getCreateEntries(Columns.TABLE_RADIO);
+  // Indexes cover ids queries, as _id is rowid
+  static final String SQL_CREATE_POSITION_INDEX =
+    "CREATE INDEX IF NOT EXISTS " + Columns.INDEX_POSITION +
+      " ON " + Columns.TABLE_RADIO + " (" + Columns.COLUMN_POSITION + ")";
+  static final String SQL_CREATE_PREFERRED_INDEX =
+    "CREATE INDEX IF NOT EXISTS " + Columns.INDEX_PREFERRED +
+      " ON " + Columns.TABLE_RADIO +
+      " (" + Columns.COLUMN_IS_PREFERRED + "," + Columns.COLUMN_POSITION + ")";
+  static final String SQL_ADD_DOMINANT_COLOR =
+    "ALTER TABLE " + Columns.TABLE_RADIO +
+      " ADD COLUMN " + Columns.COLUMN_DOMINANT_COLOR + " INTEGER";
+  static final String SQL_ADD_SOURCE_HASH =
+    "ALTER TABLE " + Columns.TABLE_RADIO +
+      " ADD COLUMN " + Columns.COLUMN_SOURCE_HASH + " TEXT";
+  static final String SQL_DELETE_ENTRIES = "DROP TABLE IF EXISTS " + Columns.TABLE_RADIO;
+  static final String SQL_CREATE_HEALTH_ENTRIES =
+    "CREATE TABLE " + HealthColumns.TABLE_HEALTH + " (" +
+      HealthColumns.COLUMN_RADIO_ID + " INTEGER PRIMARY KEY," +
+      HealthColumns.COLUMN_IS_REACHABLE + " INTEGER," +
+      HealthColumns.COLUMN_LATENCY + " INTEGER," +
+      HealthColumns.COLUMN_RATE + " INTEGER," +
+      HealthColumns.COLUMN_CONTENT_TYPE + " TEXT," +
+      HealthColumns.COLUMN_TIME + " INTEGER)";
+  static final String SQL_DELETE_HEALTH_ENTRIES =
+    "DROP TABLE IF EXISTS " + HealthColumns.TABLE_HEALTH;
+
+  // Version 4: isPreferred as INTEGER, table is rebuilt as SQLite can't change a column type.
+  // Schema is frozen as of version 4, later columns are added by later migrations.
+  private static final String SQL_CREATE_ENTRIES_V4 =
+    "CREATE TABLE radio_v4 (" +
+      "_id INTEGER PRIMARY KEY," +
+      "name TEXT," +
+      "icon TEXT," +
+      "type TEXT," +
+      "language TEXT," +
+      "url TEXT," +
+      "webSite TEXT," +
+      "quality TEXT," +
+      "isPreferred INTEGER NOT NULL DEFAULT 0," +
+      "position INTEGER," +
+      "dominantColor INTEGER)";
+  // isPreferred was stored as 'true' or 'false'
+  private static final String SQL_COPY_ENTRIES_V4 =
+    "INSERT INTO radio_v4 (" +
+      "_id, name, icon, type, language, url, webSite, quality, isPreferred, position, " +
+      "dominantColor)" +
+      " SELECT " +
+      "_id, name, icon, type, language, url, webSite, quality, " +
+      "CASE WHEN isPreferred = 'true' THEN 1 ELSE 0 END, position, " +
+      "dominantColor" +
+      " FROM radio";
+  // Migrations by version: SQL_MIGRATIONS[i] upgrades from version i + 1 to version i + 2.
+  // Run in the upgrade transaction; data shall be kept.
+  static final String[][] SQL_MIGRATIONS = {
+    // 2: radio health
+    {SQL_CREATE_HEALTH_ENTRIES},
+    // 3: dominant color, values are computed in the background
+    {SQL_ADD_DOMINANT_COLOR},
+    // 4: typed isPreferred, indexes
+    {
+      SQL_CREATE_ENTRIES_V4,
+      SQL_COPY_ENTRIES_V4,
+      SQL_DELETE_ENTRIES,
+      "ALTER TABLE radio_v4 RENAME TO " + Columns.TABLE_RADIO,
+      SQL_CREATE_POSITION_INDEX,
+      SQL_CREATE_PREFERRED_INDEX
+    },
+    // 5: sparse positions, see POSITION_GAP
+    {
+      "UPDATE " + Columns.TABLE_RADIO +
+        " SET " + Columns.COLUMN_POSITION + " = " + Columns.COLUMN_POSITION + " * " + POSITION_GAP
+    },
+    // 6: hash of imported radios on their source
+    {SQL_ADD_SOURCE_HASH}
+  };
+  static final int DATABASE_VERSION = SQL_MIGRATIONS.length + 1;
+
+  // To prevent someone from accidentally instantiating the contract class
+  private RadioSQLContract() {
+  }
+
+  @NonNull
+  private static String getCreateEntries(@NonNull String table) {
+    return "CREATE TABLE " + table + " (" +
       Columns._ID + " INTEGER PRIMARY KEY," +
       Columns.COLUMN_NAME + " TEXT," +
       Columns.COLUMN_ICON + " TEXT," +
@@ -36,12 +124,14 @@ public final class RadioSQLContract {
       Columns.COLUMN_URL + " TEXT," +
       Columns.COLUMN_WEB_PAGE + " TEXT," +
       Columns.COLUMN_QUALITY + " TEXT," +
-      Columns.COLUMN_IS_PREFERRED + " TEXT," +
-      Columns.COLUMN_POSITION + " INTEGER)";
-  static final String SQL_DELETE_ENTRIES = "DROP TABLE IF EXISTS " + Columns.TABLE_RADIO;
+      Columns.COLUMN_IS_PREFERRED + " INTEGER NOT NULL DEFAULT 0," +
+      Columns.COLUMN_POSITION + " INTEGER," +
+      Columns.COLUMN_DOMINANT_COLOR + " INTEGER," +
+      Columns.COLUMN_SOURCE_HASH + " TEXT)";
+  }
 
-  // To prevent someone from accidentally instantiating the contract class
-  private RadioSQLContract() {
+  static int toInteger(boolean value) {
+    return value ? 1 : 0;
   }
 
   public static class Columns implements BaseColumns {
@@ -55,5 +145,22 @@ public final class RadioSQLContract {
     public static final String COLUMN_QUALITY = "quality";
     public static final String COLUMN_IS_PREFERRED = "isPreferred";
     public static final String COLUMN_POSITION = "position";
+    // ARGB, from icon; null until computed
+    public static final String COLUMN_DOMINANT_COLOR = "dominantColor";
+    // Export hash of the radio on the device it was imported from; null if not imported
+    public static final String COLUMN_SOURCE_HASH = "sourceHash";
+    public static final String INDEX_POSITION = "radio_position";
+    public static final String INDEX_PREFERRED = "radio_preferred_position";
+  }
+
+  // One row per probed radio
+  public static class HealthColumns {
+    public static final String TABLE_HEALTH = "health";
+    public static final String COLUMN_RADIO_ID = "radioId";
+    public static final String COLUMN_IS_REACHABLE = "isReachable";
+    public static final String COLUMN_LATENCY = "latency";
+    public static final String COLUMN_RATE = "rate";
+    public static final String COLUMN_CONTENT_TYPE = "contentType";
+    public static final String COLUMN_TIME = "time";
   }
 }
\ No newline at end of file
@@ -0,0 +1,620 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.watea.radio_upnp.model.Radio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+// One upstream radio connection, whose audio is shared by all subscribers.
+// Each subscriber has its own bounded buffer; a slow subscriber loses data or is
+// disconnected, others are not stalled.
+// Last seconds of audio are kept, so that a new subscriber gets audio at once. Connection is
+// kept for a while after last subscriber leaves or pauses, as LAN clients often reconnect.
+public class BroadcastHub {
+  private static final String LOG_TAG = BroadcastHub.class.getName();
+  private static final int SUBSCRIBER_BUFFER_SIZE = 256 * 1024;
+  // Pre-roll duration (s), limited to half subscriber buffer
+  private static final int PREROLL_DURATION = 5;
+  private static final int PREROLL_MAX = SUBSCRIBER_BUFFER_SIZE / 2;
+  // Used if radio does not give its rate (kbit/s)
+  private static final int DEFAULT_RATE = 128;
+  // Connection is kept that long without subscriber (ms)
+  private static final long LINGER_DELAY = 10000;
+  // Subscriber is disconnected when it has lost more than that within DROP_WINDOW
+  private static final long SUBSCRIBER_DROPPED_MAX = SUBSCRIBER_BUFFER_SIZE;
+  private static final long DROP_WINDOW = 10000; // ms
+  @NonNull
+  private final Radio radio;
+  @NonNull
+  private final String userAgent;
+  @NonNull
+  private final RadioHandler.Listener listener;
+  @NonNull
+  private final Listener hubListener;
+  private final List<Subscriber> subscribers = new Vector<>();
+  // Upstream headers forwarded to subscribers, ICY headers excluded
+  private final Map<String, String> headers = new Hashtable<>();
+  @Nullable
+  private HttpURLConnection httpURLConnection = null;
+  @Nullable
+  private String rate = null;
+  @Nullable
+  private String information = null;
+  // Last audio data received
+  @Nullable
+  private Ring preroll = null;
+  // Last time a subscriber was neither gone nor paused
+  private long idleSince = 0;
+  private boolean isClosed = false;
+
+  public BroadcastHub(
+    @NonNull Radio radio,
+    @NonNull String userAgent,
+    @NonNull RadioHandler.Listener listener,
+    @NonNull Listener hubListener) {
+    this.radio = radio;
+    this.userAgent = userAgent;
+    this.listener = listener;
+    this.hubListener = hubListener;
+  }
+
+  // ICY data not forwarded, as only used here
+  @NonNull
+  public static Map<String, String> getForwardedHeaders(
+    @NonNull HttpURLConnection httpURLConnection) {
+    final Map<String, String> result = new Hashtable<>();
+    for (String header : httpURLConnection.getHeaderFields().keySet()) {
+      if ((header != null) && !header.toLowerCase().startsWith("icy-")) {
+        final String value = httpURLConnection.getHeaderField(header);
+        if (value != null) {
+          result.put(header, value);
+        }
+      }
+    }
+    return result;
+  }
+
+  @NonNull
+  public Radio getRadio() {
+    return radio;
+  }
+
+  public synchronized boolean isClosed() {
+    return isClosed;
+  }
+
+  // Null if hub is closed
+  @Nullable
+  public synchronized Subscriber subscribe(
+    @NonNull String lockKey, @NonNull RadioHandler.Controller controller) {
+    if (isClosed) {
+      return null;
+    }
+    final Subscriber subscriber = new Subscriber(lockKey, controller);
+    // Radio already playing: start with pre-roll
+    if (preroll != null) {
+      subscriber.seed(preroll);
+    }
+    subscribers.add(subscriber);
+    return subscriber;
+  }
+
+  // Connection is closed later if no other subscriber comes
+  public synchronized void unsubscribe(@NonNull Subscriber subscriber) {
+    subscriber.close();
+    subscriber.release();
+    subscribers.remove(subscriber);
+  }
+
+  @NonNull
+  public List<Subscriber> getSubscribers() {
+    return new Vector<>(subscribers);
+  }
+
+  // Connect to radio if not already done; upstream is then read in its own thread
+  public void open() throws IOException {
+    try {
+      connect();
+    } catch (IOException iOException) {
+      // Playlist may be outdated
+      radio.invalidateUrlFromM3u();
+      close();
+      throw iOException;
+    }
+  }
+
+  private synchronized void connect() throws IOException {
+    if (isClosed) {
+      throw new IOException("connect: hub is closed");
+    }
+    if (httpURLConnection != null) {
+      return;
+    }
+    // Accept M3U format
+    httpURLConnection = new RadioURL(radio.getUrlFromM3u()).getActualHttpURLConnection(
+      connection -> {
+        connection.setRequestProperty("User-Agent", userAgent);
+        // ICY request
+        connection.setRequestProperty("Icy-Metadata", "1");
+      });
+    Log.d(LOG_TAG, "Connected to radio URL");
+    headers.putAll(getForwardedHeaders(httpURLConnection));
+    rate = httpURLConnection.getHeaderField("icy-br");
+    preroll = new Ring(getPrerollSize(rate));
+    final HttpURLConnection connection = httpURLConnection;
+    new Thread(() -> run(connection), LOG_TAG + ":" + radio.getName()).start();
+  }
+
+  @NonNull
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  @Nullable
+  public String getRate() {
+    return rate;
+  }
+
+  // Last information received, if any
+  @Nullable
+  public String getInformation() {
+    return information;
+  }
+
+  // Disconnect from radio and release all subscribers
+  public void close() {
+    final HttpURLConnection connection;
+    synchronized (this) {
+      isClosed = true;
+      connection = httpURLConnection;
+      for (Subscriber subscriber : subscribers) {
+        subscriber.close();
+      }
+    }
+    if (connection != null) {
+      connection.disconnect();
+    }
+    hubListener.onClose(this);
+  }
+
+  private void run(@NonNull HttpURLConnection httpURLConnection) {
+    Log.d(LOG_TAG, "run: entering for " + radio.getName());
+    final RelayBuffers relayBuffers = RelayBuffers.take();
+    try {
+      // Try to find charset
+      final String contentEncoding = httpURLConnection.getContentEncoding();
+      final Charset charset = (contentEncoding == null) ?
+        Charset.defaultCharset() : Charset.forName(contentEncoding);
+      relay(
+        httpURLConnection.getInputStream(),
+        new IcyMetadataParser(charset.newDecoder(), relayBuffers.metadata.length),
+        getMetadataOffset(httpURLConnection),
+        relayBuffers.audio,
+        relayBuffers.metadata);
+    } catch (Exception exception) {
+      // Fires also when hub is closed
+      Log.d(LOG_TAG, "run error", exception);
+    } finally {
+      relayBuffers.release();
+      close();
+    }
+    Log.d(LOG_TAG, "run: leaving for " + radio.getName());
+  }
+
+  // Pre-roll size from rate in kbit/s
+  private static int getPrerollSize(@Nullable String rate) {
+    int kbps = DEFAULT_RATE;
+    try {
+      kbps = (rate == null) ? DEFAULT_RATE : Integer.parseInt(rate.split(",")[0].trim());
+    } catch (NumberFormatException numberFormatException) {
+      Log.w(LOG_TAG, "Malformed header icy-br");
+    }
+    return Math.min(((kbps > 0) ? kbps : DEFAULT_RATE) * 125 * PREROLL_DURATION, PREROLL_MAX);
+  }
+
+  // True if an MPEG audio or AAC ADTS frame header starts at index of ring
+  private static boolean isFrameStart(@NonNull Ring ring, int index) {
+    if ((index + 2 >= ring.size) ||
+      ((ring.get(index) & 0xFF) != 0xFF) ||
+      ((ring.get(index + 1) & 0xE0) != 0xE0)) {
+      return false;
+    }
+    final int second = ring.get(index + 1) & 0xFF;
+    final int third = ring.get(index + 2) & 0xFF;
+    // Layer 00: ADTS, 12 bits sync word and valid sampling frequency index
+    if ((second & 0x06) == 0) {
+      return ((second & 0xF0) == 0xF0) && (((third >> 2) & 0x0F) < 13);
+    }
+    // MPEG audio: valid version, bitrate index and sampling rate
+    return (((second >> 3) & 0x03) != 1) && ((third >> 4) != 0x0F) && (((third >> 2) & 0x03) != 3);
+  }
+
+  // Find metadata place, 0 if undefined
+  private int getMetadataOffset(@NonNull HttpURLConnection httpURLConnection) {
+    int metadataOffset = 0;
+    final List<String> headerMeta = httpURLConnection.getHeaderFields().get("icy-metaint");
+    try {
+      metadataOffset = (headerMeta == null) ? 0 : Integer.parseInt(headerMeta.get(0));
+    } catch (NumberFormatException numberFormatException) {
+      Log.w(LOG_TAG, "Malformed header icy-metaint");
+    }
+    if (metadataOffset > 0) {
+      Log.i(LOG_TAG, "Metadata expected at index: " + metadataOffset);
+    } else if (metadataOffset == 0) {
+      Log.i(LOG_TAG, "No metadata expected");
+    } else {
+      metadataOffset = 0;
+      Log.w(LOG_TAG, "Wrong metadata value");
+    }
+    return metadataOffset;
+  }
+
+  // Forward stream data and handle metadata
+  // metadataOffset = 0 if no metadata
+  // Audio is forwarded by blocks, up to next metadata block if any
+  private void relay(
+    @NonNull final InputStream inputStream,
+    @NonNull final IcyMetadataParser icyMetadataParser,
+    final int metadataOffset,
+    @NonNull final byte[] buffer,
+    @NonNull final byte[] metadata) throws IOException {
+    // Stream data to read before next metadata block
+    int audioBytesLeft = metadataOffset;
+    while (!isClosed() && !isExpired()) {
+      final int readResult = inputStream.read(
+        buffer,
+        0,
+        (metadataOffset == 0) ? buffer.length : Math.min(buffer.length, audioBytesLeft));
+      if (readResult < 0) {
+        Log.d(LOG_TAG, "No more data to read");
+        break;
+      }
+      // Only stream data are transferred
+      publish(buffer, readResult);
+      if ((metadataOffset > 0) && ((audioBytesLeft -= readResult) == 0)) {
+        // First byte gives size (16 bytes chunks) to read for metadata
+        final int sizeByte = inputStream.read();
+        if (sizeByte < 0) {
+          Log.d(LOG_TAG, "No more data to read");
+          break;
+        }
+        final int metadataSize = sizeByte * 16;
+        // Only first bytes are kept, others are skipped
+        final int metadataLength = Math.min(metadataSize, metadata.length);
+        if (!readFully(inputStream, metadata, metadataLength) ||
+          !skipFully(inputStream, buffer, metadataSize - metadataLength)) {
+          Log.d(LOG_TAG, "No more data to read");
+          break;
+        }
+        if ((metadataLength > 0) && icyMetadataParser.parse(metadata, metadataLength)) {
+          handleMetadata(icyMetadataParser);
+        }
+        audioBytesLeft = metadataOffset;
+      }
+    }
+  }
+
+  // Closed if idle for too long; paused subscribers don't need the connection
+  private synchronized boolean isExpired() {
+    final long now = SystemClock.elapsedRealtime();
+    for (Subscriber subscriber : subscribers) {
+      if (!subscriber.isPaused()) {
+        idleSince = now;
+        return isClosed;
+      }
+    }
+    if (now - idleSince > LINGER_DELAY) {
+      Log.d(LOG_TAG, "No more active subscriber for: " + radio.getName());
+      isClosed = true;
+    }
+    return isClosed;
+  }
+
+  private void publish(@NonNull byte[] buffer, int length) {
+    synchronized (this) {
+      assert preroll != null;
+      preroll.write(buffer, length);
+    }
+    for (Subscriber subscriber : getSubscribers()) {
+      subscriber.write(buffer, length, preroll);
+    }
+  }
+
+  // Metadata: look for title information, only if changed
+  private void handleMetadata(@NonNull final IcyMetadataParser icyMetadataParser) {
+    final String information = icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE);
+    if ((information != null) && !information.equals(this.information)) {
+      this.information = information;
+      // Tell listeners
+      for (Subscriber subscriber : getSubscribers()) {
+        listener.onNewInformation(information, rate, subscriber.lockKey);
+      }
+    }
+  }
+
+  // Read length bytes in buffer, which must be large enough.
+  // Returns false if end of stream is reached.
+  private boolean readFully(
+    @NonNull final InputStream inputStream, @NonNull final byte[] buffer, final int length)
+    throws IOException {
+    int offset = 0;
+    while (offset < length) {
+      final int readResult = inputStream.read(buffer, offset, length - offset);
+      if (readResult < 0) {
+        return false;
+      }
+      offset += readResult;
+    }
+    return true;
+  }
+
+  // Skip length bytes, using buffer as scratch.
+  // Returns false if end of stream is reached.
+  private boolean skipFully(
+    @NonNull final InputStream inputStream, @NonNull final byte[] buffer, int length)
+    throws IOException {
+    while (length > 0) {
+      final int readResult = inputStream.read(buffer, 0, Math.min(buffer.length, length));
+      if (readResult < 0) {
+        return false;
+      }
+      length -= readResult;
+    }
+    return true;
+  }
+
+  public interface Listener {
+    void onClose(@NonNull BroadcastHub broadcastHub);
+  }
+
+  // Bounded ring buffer of audio data for one LAN client
+  public static class Subscriber {
+    @NonNull
+    private final String lockKey;
+    @NonNull
+    private final RadioHandler.Controller controller;
+    // Back to pool once unsubscribed
+    private final Ring ring = Ring.take();
+    // Total, for information
+    private long droppedBytes = 0;
+    // Within current window, for overload detection
+    private long windowDroppedBytes = 0;
+    private long windowStart = SystemClock.elapsedRealtime();
+    private boolean isPaused = false;
+    private boolean isClosed = false;
+    private boolean isReleased = false;
+
+    private Subscriber(@NonNull String lockKey, @NonNull RadioHandler.Controller controller) {
+      this.lockKey = lockKey;
+      this.controller = controller;
+    }
+
+    @NonNull
+    public String getLockKey() {
+      return lockKey;
+    }
+
+    @NonNull
+    public RadioHandler.Controller getController() {
+      return controller;
+    }
+
+    // Bytes waiting to be sent
+    public synchronized int getLag() {
+      return isReleased ? 0 : ring.size;
+    }
+
+    // Bytes lost as subscriber was too slow
+    public synchronized long getDroppedBytes() {
+      return droppedBytes;
+    }
+
+    public synchronized boolean isClosed() {
+      return isClosed;
+    }
+
+    // As seen on last write
+    public synchronized boolean isPaused() {
+      return isPaused;
+    }
+
+    // Blocks at most timeout ms.
+    // Returns number of bytes read, 0 on timeout, -1 if closed.
+    public synchronized int read(@NonNull byte[] buffer, long timeout)
+      throws InterruptedException {
+      if (isReleased) {
+        return -1;
+      }
+      if ((ring.size == 0) && !isClosed) {
+        wait(timeout);
+      }
+      if (ring.size == 0) {
+        return isClosed ? -1 : 0;
+      }
+      return ring.read(buffer);
+    }
+
+    // Copy audio from first frame found in pre-roll
+    private synchronized void seed(@NonNull Ring preroll) {
+      for (int index = 0; index < preroll.size; index++) {
+        if (isFrameStart(preroll, index)) {
+          Log.d(LOG_TAG, "Pre-roll sent: " + (preroll.size - index) + " bytes");
+          preroll.copyTo(ring, index);
+          return;
+        }
+      }
+      Log.d(LOG_TAG, "No frame found in pre-roll");
+    }
+
+    // Nothing is kept while paused; on resume, subscriber restarts from pre-roll.
+    // Pre-roll already holds buffer.
+    private synchronized void write(@NonNull byte[] buffer, int length, @NonNull Ring preroll) {
+      if (isClosed) {
+        return;
+      }
+      if (controller.isPaused()) {
+        isPaused = true;
+        return;
+      }
+      final long now = SystemClock.elapsedRealtime();
+      if (isPaused) {
+        Log.d(LOG_TAG, "Subscriber resumed: " + lockKey);
+        isPaused = false;
+        ring.clear();
+        windowDroppedBytes = 0;
+        windowStart = now;
+        seed(preroll);
+        notifyAll();
+        return;
+      }
+      if (now - windowStart > DROP_WINDOW) {
+        windowDroppedBytes = 0;
+        windowStart = now;
+      }
+      final int dropped = ring.write(buffer, length);
+      droppedBytes += dropped;
+      windowDroppedBytes += dropped;
+      if (windowDroppedBytes > SUBSCRIBER_DROPPED_MAX) {
+        Log.i(LOG_TAG, "Subscriber too slow, disconnected: " + lockKey);
+        close();
+        return;
+      }
+      notifyAll();
+    }
+
+    private synchronized void close() {
+      isClosed = true;
+      notifyAll();
+    }
+
+    // Shall be closed
+    private synchronized void release() {
+      if (!isReleased) {
+        isReleased = true;
+        ring.release();
+      }
+    }
+  }
+
+  // Byte ring buffer, oldest data are dropped when full.
+  // Not thread safe.
+  private static class Ring {
+    private static final int POOL_MAX = 4;
+    // Subscriber rings, reused from one subscriber to another
+    private static final List<Ring> pool = new Vector<>();
+    @NonNull
+    private final byte[] bytes;
+    private int head = 0;
+    private int size = 0;
+
+    private Ring(int capacity) {
+      bytes = new byte[capacity];
+    }
+
+    // Empty subscriber ring
+    @NonNull
+    private static Ring take() {
+      synchronized (pool) {
+        if (pool.isEmpty()) {
+          return new Ring(SUBSCRIBER_BUFFER_SIZE);
+        }
+        final Ring ring = pool.remove(pool.size() - 1);
+        ring.clear();
+        return ring;
+      }
+    }
+
+    private void release() {
+      synchronized (pool) {
+        if (pool.size() < POOL_MAX) {
+          pool.add(this);
+        }
+      }
+    }
+
+    private byte get(int index) {
+      return bytes[(head + index) % bytes.length];
+    }
+
+    private void clear() {
+      head = 0;
+      size = 0;
+    }
+
+    // Returns number of dropped bytes
+    private int write(@NonNull byte[] buffer, int length) {
+      return write(buffer, 0, length);
+    }
+
+    private int write(@NonNull byte[] buffer, int offset, int length) {
+      // Only last bytes are kept if buffer is too large
+      final int skipped = Math.max(0, length - bytes.length);
+      offset += skipped;
+      length -= skipped;
+      final int overflow = Math.max(0, size + length - bytes.length);
+      head = (head + overflow) % bytes.length;
+      size -= overflow;
+      final int tail = (head + size) % bytes.length;
+      final int firstPart = Math.min(length, bytes.length - tail);
+      System.arraycopy(buffer, offset, bytes, tail, firstPart);
+      System.arraycopy(buffer, offset + firstPart, bytes, 0, length - firstPart);
+      size += length;
+      return skipped + overflow;
+    }
+
+    // Returns number of read bytes
+    private int read(@NonNull byte[] buffer) {
+      final int length = Math.min(buffer.length, size);
+      final int firstPart = Math.min(length, bytes.length - head);
+      System.arraycopy(bytes, head, buffer, 0, firstPart);
+      System.arraycopy(bytes, 0, buffer, firstPart, length - firstPart);
+      head = (head + length) % bytes.length;
+      size -= length;
+      return length;
+    }
+
+    // Write content from index to ring, content is kept; no copy
+    private void copyTo(@NonNull Ring ring, int index) {
+      final int start = (head + index) % bytes.length;
+      final int length = size - index;
+      final int firstPart = Math.min(length, bytes.length - start);
+      ring.write(bytes, start, firstPart);
+      ring.write(bytes, 0, length - firstPart);
+    }
+  }
+}
\ No newline at end of file
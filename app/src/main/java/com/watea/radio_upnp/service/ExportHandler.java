@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.watea.radio_upnp.model.RadioExport;
+import com.watea.radio_upnp.model.RadioLibrary;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// Serves radio library export as a stream, whole or by selected radios, and its index.
+// Icons are served as local files.
+public class ExportHandler extends AbstractHandler {
+  public static final String EXPORT_PATH = "export";
+  private static final String LOG_TAG = ExportHandler.class.getName();
+  @NonNull
+  private final RadioLibrary radioLibrary;
+
+  public ExportHandler(@NonNull RadioLibrary radioLibrary) {
+    this.radioLibrary = radioLibrary;
+  }
+
+  @Override
+  public void handle(
+    String target,
+    Request baseRequest,
+    HttpServletRequest request,
+    HttpServletResponse response) throws IOException {
+    final boolean isIndex = ("/" + EXPORT_PATH + "/" + RadioExport.INDEX_PATH).equals(target);
+    if ((baseRequest == null) || !(isIndex || ("/" + EXPORT_PATH).equals(target))) {
+      return;
+    }
+    baseRequest.setHandled(true);
+    if (!"GET".equals(baseRequest.getMethod())) {
+      response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+      return;
+    }
+    if (!radioLibrary.isOpen()) {
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    Log.d(LOG_TAG, "Export requested: " + target);
+    response.setContentType(RadioExport.CONTENT_TYPE + "; charset=utf-8");
+    response.setStatus(HttpServletResponse.SC_OK);
+    final Writer writer = new BufferedWriter(
+      new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+    if (isIndex) {
+      RadioExport.writeIndex(radioLibrary, writer);
+    } else {
+      final String ids = request.getParameter(RadioExport.IDS);
+      RadioExport.write(radioLibrary, writer, (ids == null) ? null : RadioExport.parseIds(ids));
+    }
+  }
+}
\ No newline at end of file
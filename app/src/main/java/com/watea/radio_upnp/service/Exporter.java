@@ -23,11 +23,13 @@
 
 package com.watea.radio_upnp.service;
 
+import android.net.Uri;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.watea.radio_upnp.model.RadioExport;
 import com.watea.radio_upnp.model.RadioLibrary;
 
 import org.fourthline.cling.binding.annotations.UpnpAction;
@@ -44,6 +46,8 @@ public class Exporter {
   public static final String EXPORTER_SERVICE = "Exporter";
   public static final String ACTION_GET_EXPORT = "GetExport";
   public static final String EXPORT = "Export";
+  public static final String ACTION_GET_MANIFEST = "GetManifest";
+  public static final String MANIFEST = "Manifest";
   private static final String LOG_TAG = Exporter.class.getName();
   @Nullable
   private RadioLibrary radioLibrary;
@@ -51,11 +55,15 @@ public class Exporter {
   @UpnpStateVariable(sendEvents = false)
   private String export = "";
 
+  @UpnpStateVariable(sendEvents = false)
+  private String manifest = "";
+
   // Must be called
   public void set(@NonNull RadioLibrary radioLibrary) {
     this.radioLibrary = radioLibrary;
   }
 
+  // Legacy, whole library in one string
   @UpnpAction(out = @UpnpOutputArgument(name = EXPORT))
   public String getExport() {
     assert radioLibrary != null;
@@ -63,4 +71,13 @@ public class Exporter {
     Log.d(LOG_TAG, "getExport: " + export.length() + " characters");
     return export;
   }
+
+  // Where to read export stream; empty if not available
+  @UpnpAction(out = @UpnpOutputArgument(name = MANIFEST))
+  public String getManifest() {
+    final Uri exportUri = HttpServer.getExportUri();
+    manifest = (exportUri == null) ? "" : RadioExport.getManifest(exportUri.toString());
+    Log.d(LOG_TAG, "getManifest: " + manifest);
+    return manifest;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.watea.radio_upnp.model.Radio;
+import com.watea.radio_upnp.model.RadioHealth;
+import com.watea.radio_upnp.model.RadioLibrary;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Background reachability check of all radios.
+// Radios are probed concurrently, with a limit per host; results are stored at the end.
+// Database is accessed off main thread.
+// Scans are rate limited and skipped when offline.
+// Shall be used from main thread.
+public class HealthProber {
+  private static final String LOG_TAG = HealthProber.class.getName();
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  private static final int PROBES_MAX = 16;
+  private static final int HOST_PROBES_MAX = 2;
+  private static final int PROBE_TIMEOUT = 4000; // ms
+  private static final long HEALTH_TTL = 30 * 60 * 1000L; // ms
+  private static final long SCAN_INTERVAL = 10 * 60 * 1000L; // ms
+  // Process wide, as a prober is created on each activity resume
+  private static long lastScanTime = 0;
+  @NonNull
+  private final RadioLibrary radioLibrary;
+  @NonNull
+  private final NetworkProxy networkProxy;
+  @NonNull
+  private final String userAgent;
+  // Set from scan request until results are stored
+  private boolean isScanning = false;
+  private ExecutorService executor = null;
+  private Map<Long, RadioHealth> healths = null;
+
+  public HealthProber(
+    @NonNull RadioLibrary radioLibrary,
+    @NonNull NetworkProxy networkProxy,
+    @NonNull String userAgent) {
+    this.radioLibrary = radioLibrary;
+    this.networkProxy = networkProxy;
+    this.userAgent = userAgent;
+  }
+
+  // Radios probed less than HEALTH_TTL ago are skipped.
+  // Nothing done if last scan is less than SCAN_INTERVAL old.
+  public void scan() {
+    final long now = System.currentTimeMillis();
+    if (isScanning || (now - lastScanTime < SCAN_INTERVAL)) {
+      return;
+    }
+    // Results would be meaningless
+    if (networkProxy.isDeviceOffline()) {
+      Log.d(LOG_TAG, "Scan skipped, device is offline");
+      return;
+    }
+    lastScanTime = now;
+    isScanning = true;
+    radioLibrary.read(() -> getHosts(now), this::onHosts);
+  }
+
+  // Results so far are stored
+  public void cancel() {
+    isScanning = false;
+    if (executor != null) {
+      executor.shutdownNow();
+      store();
+    }
+  }
+
+  // One queue per host, database reader thread
+  @NonNull
+  private Map<String, Queue<Radio>> getHosts(long now) {
+    final Map<Long, RadioHealth> knownHealths = radioLibrary.getHealths();
+    final Map<String, Queue<Radio>> hosts = new Hashtable<>();
+    for (Long radioId : radioLibrary.getAllRadioIds()) {
+      final RadioHealth radioHealth = knownHealths.get(radioId);
+      final Radio radio;
+      if (((radioHealth == null) || (now - radioHealth.getTime() > HEALTH_TTL)) &&
+        ((radio = radioLibrary.getFrom(radioId)) != null)) {
+        final String host = radio.getURL().getHost();
+        Queue<Radio> radios = hosts.get(host);
+        if (radios == null) {
+          hosts.put(host, radios = new ConcurrentLinkedQueue<>());
+        }
+        radios.add(radio);
+      }
+    }
+    return hosts;
+  }
+
+  private void onHosts(@NonNull Map<String, Queue<Radio>> hosts) {
+    // Ignore if cancelled or already started
+    if (!isScanning || (executor != null)) {
+      return;
+    }
+    if (hosts.isEmpty()) {
+      isScanning = false;
+      return;
+    }
+    Log.d(LOG_TAG, "Scan started on hosts: " + hosts.size());
+    final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+      PROBES_MAX, PROBES_MAX, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    final Map<Long, RadioHealth> currentHealths = new Hashtable<>();
+    final AtomicInteger currentPendingHosts = new AtomicInteger();
+    executor = threadPoolExecutor;
+    healths = currentHealths;
+    // Each worker empties its host queue, HOST_PROBES_MAX workers per host
+    for (Queue<Radio> radios : hosts.values()) {
+      for (int i = 0; i < Math.min(HOST_PROBES_MAX, radios.size()); i++) {
+        currentPendingHosts.incrementAndGet();
+        threadPoolExecutor.execute(() -> {
+          Radio radio;
+          while (!threadPoolExecutor.isShutdown() && ((radio = radios.poll()) != null)) {
+            final RadioHealth radioHealth = probe(radio);
+            // No result after cancel, results may be being stored
+            synchronized (currentHealths) {
+              if (!threadPoolExecutor.isShutdown()) {
+                currentHealths.put(radio.getId(), radioHealth);
+              }
+            }
+          }
+          if (currentPendingHosts.decrementAndGet() == 0) {
+            handler.post(() -> onScanEnd(threadPoolExecutor));
+          }
+        });
+      }
+    }
+  }
+
+  private void onScanEnd(@NonNull ExecutorService scanExecutor) {
+    // Ignore if cancelled
+    if (scanExecutor == executor) {
+      scanExecutor.shutdown();
+      store();
+    }
+  }
+
+  // Executor must be shut down
+  private void store() {
+    final Map<Long, RadioHealth> storedHealths;
+    synchronized (healths) {
+      storedHealths = new Hashtable<>(healths);
+    }
+    Log.d(LOG_TAG, "Scan done on radios: " + storedHealths.size());
+    if (radioLibrary.isOpen()) {
+      radioLibrary.setHealthsAsync(storedHealths, null);
+    }
+    executor = null;
+    healths = null;
+    isScanning = false;
+  }
+
+  @NonNull
+  private RadioHealth probe(@NonNull Radio radio) {
+    final long start = System.currentTimeMillis();
+    HttpURLConnection httpURLConnection = null;
+    try {
+      final URL url = radio.getUrlFromM3u();
+      httpURLConnection = new RadioURL(url).getActualHttpURLConnection(connection -> {
+        connection.setConnectTimeout(PROBE_TIMEOUT);
+        connection.setReadTimeout(PROBE_TIMEOUT);
+        connection.setRequestProperty("User-Agent", userAgent);
+        // Headers only are needed; live streams may ignore it and are then disconnected
+        connection.setRequestProperty("Range", "bytes=0-0");
+      });
+      final int latency = (int) (System.currentTimeMillis() - start);
+      return new RadioHealth(
+        (httpURLConnection.getResponseCode() / 100 == 2),
+        latency,
+        httpURLConnection.getHeaderFieldInt("icy-br", 0),
+        RadioURL.getMimeType(httpURLConnection));
+    } catch (IOException iOException) {
+      Log.d(LOG_TAG, "Probe failed on: " + radio.getName(), iOException);
+      return new RadioHealth(false, (int) (System.currentTimeMillis() - start), 0, null);
+    } finally {
+      // Stream, no reuse possible
+      if (httpURLConnection != null) {
+        httpURLConnection.disconnect();
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -31,20 +31,39 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.watea.radio_upnp.model.IconStore;
 import com.watea.radio_upnp.model.Radio;
+import com.watea.radio_upnp.model.RadioLibrary;
 
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.server.handler.ResourceHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
+import java.io.File;
 import java.io.FileOutputStream;
 
 public class HttpServer extends Thread {
   private static final String LOG_TAG = HttpServer.class.getName();
-  private static final String LOGO_FILE = "logo";
-  private static final int REMOTE_LOGO_SIZE = 300;
-  private final Server server = new Server(0);
+  private static final int REMOTE_LOGO_SIZE = IconStore.ICON_SIZE;
+  // Each connector runs one acceptor and one selector thread
+  private static final int CONNECTOR_THREADS = 2;
+  // Threads for HEAD requests and rejections, in addition to streams
+  private static final int STREAM_SPARE_THREADS = 2;
+  private static final String STREAM_CONNECTOR = "stream";
+  private static final String LOGO_CONNECTOR = "logo";
+  // Running server, if any; export is requested out of RadioService
+  @Nullable
+  private static volatile HttpServer runningHttpServer = null;
+  private final Server server = new Server();
+  // Radio streams and logo files are served on their own connector and thread pool
+  @NonNull
+  private final SelectChannelConnector streamConnector;
+  @NonNull
+  private final SelectChannelConnector logoConnector;
   @NonNull
   private final Context context;
   @NonNull
@@ -59,17 +78,55 @@ public class HttpServer extends Thread {
     @NonNull String userAgent,
     @NonNull RadioHandler.Callback radioHandlerCallback,
     @NonNull RadioHandler.Listener radioHandlerListener,
+    @NonNull RadioLibrary radioLibrary,
     @NonNull Listener listener) {
+    this(
+      context,
+      userAgent,
+      radioHandlerCallback,
+      radioHandlerListener,
+      radioLibrary,
+      listener,
+      Profile.DEFAULT);
+  }
+
+  public HttpServer(
+    @NonNull Context context,
+    @NonNull String userAgent,
+    @NonNull RadioHandler.Callback radioHandlerCallback,
+    @NonNull RadioHandler.Listener radioHandlerListener,
+    @NonNull RadioLibrary radioLibrary,
+    @NonNull Listener listener,
+    @NonNull Profile profile) {
     this.context = context;
     this.listener = listener;
-    radioHandler = new RadioHandler(userAgent, radioHandlerCallback, radioHandlerListener);
+    radioHandler = new RadioHandler(
+      userAgent, radioHandlerCallback, radioHandlerListener, profile.getStreamsMax());
     networkProxy = new NetworkProxy(this.context);
+    streamConnector = createConnector(
+      STREAM_CONNECTOR,
+      profile.getStreamsMax() + STREAM_SPARE_THREADS,
+      profile.getAcceptQueueSize(),
+      profile.getStreamIdleTimeout());
+    logoConnector = createConnector(
+      LOGO_CONNECTOR,
+      profile.getLogoThreads(),
+      profile.getAcceptQueueSize(),
+      profile.getLogoIdleTimeout());
+    server.addConnector(streamConnector);
+    server.addConnector(logoConnector);
     // Handler for local files
     final ResourceHandler resourceHandler = new ResourceHandler();
     resourceHandler.setResourceBase(this.context.getFilesDir().getPath());
-    // Add the ResourceHandler to the server
+    final HandlerList logoHandlers = new HandlerList();
+    logoHandlers.setHandlers(
+      new Handler[]{new LogoHandler(), resourceHandler, new ExportHandler(radioLibrary)});
+    // Each connector only reaches its own handlers, so pools are isolated
     final HandlerList handlers = new HandlerList();
-    handlers.setHandlers(new Handler[]{resourceHandler, radioHandler});
+    handlers.setHandlers(
+      new Handler[]{
+        getConnectorContext(STREAM_CONNECTOR, radioHandler),
+        getConnectorContext(LOGO_CONNECTOR, logoHandlers)});
     server.setHandler(handlers);
   }
 
@@ -77,8 +134,8 @@ public class HttpServer extends Thread {
     radioHandler.setController(radioHandlerController);
   }
 
-  public void resumeHandler() {
-    radioHandler.resume();
+  public void resumeHandler(@NonNull RadioHandler.Controller radioHandlerController) {
+    radioHandler.resume(radioHandlerController);
   }
 
   @NonNull
@@ -92,6 +149,7 @@ public class HttpServer extends Thread {
     try {
       Log.d(LOG_TAG, "HTTP server start");
       server.start();
+      runningHttpServer = this;
       server.join();
     } catch (Exception exception) {
       Log.d(LOG_TAG, "HTTP server start error", exception);
@@ -102,6 +160,9 @@ public class HttpServer extends Thread {
   public void stopServer() {
     try {
       Log.d(LOG_TAG, "HTTP server stop");
+      if (runningHttpServer == this) {
+        runningHttpServer = null;
+      }
       resumeHandler();
       server.stop();
     } catch (Exception exception) {
@@ -109,18 +170,34 @@ public class HttpServer extends Thread {
     }
   }
 
-  // Return logo file Uri; a jpeg file
+  // Return logo file Uri; a jpeg file.
+  // Created once per icon version.
   @Nullable
   public Uri createLogoFile(@NonNull Radio radio) {
-    final String name = LOGO_FILE + radio.getId() + ".jpg";
-    try (FileOutputStream fileOutputStream = context.openFileOutput(name, Context.MODE_PRIVATE)) {
-      Bitmap
-        .createScaledBitmap(radio.getIcon(), REMOTE_LOGO_SIZE, REMOTE_LOGO_SIZE, true)
-        .compress(Bitmap.CompressFormat.JPEG, 100, fileOutputStream);
-    } catch (Exception exception) {
-      Log.e(LOG_TAG, "createLogoFile: internal failure creating logo file", exception);
+    final String name = LogoHandler.getLogoFileName(radio.getIconFile());
+    final File file = new File(context.getFilesDir(), name);
+    if (!file.exists()) {
+      // Written aside, as a remote may read it meanwhile
+      final File tempFile = new File(context.getFilesDir(), name + ".tmp");
+      boolean isWritten;
+      try (FileOutputStream fileOutputStream =
+             context.openFileOutput(tempFile.getName(), Context.MODE_PRIVATE)) {
+        isWritten = radio.getIcon(REMOTE_LOGO_SIZE)
+          .compress(Bitmap.CompressFormat.JPEG, 100, fileOutputStream);
+      } catch (Exception exception) {
+        Log.e(LOG_TAG, "createLogoFile: internal failure creating logo file", exception);
+        isWritten = false;
+      }
+      if (isWritten && tempFile.renameTo(file)) {
+        deleteFormerLogoFiles(radio, name);
+      } else {
+        Log.e(LOG_TAG, "createLogoFile: logo file not written");
+        if (tempFile.exists() && !tempFile.delete()) {
+          Log.e(LOG_TAG, "createLogoFile: internal failure deleting temporary file");
+        }
+      }
     }
-    final Uri uri = getUri();
+    final Uri uri = networkProxy.getUri(logoConnector.getLocalPort());
     return (uri == null) ? null : uri.buildUpon().appendEncodedPath(name).build();
   }
 
@@ -129,11 +206,110 @@ public class HttpServer extends Thread {
     return networkProxy.getUri(getPort());
   }
 
+  // Export of running server on LAN, served with logo files
+  @Nullable
+  public static Uri getExportUri() {
+    final HttpServer httpServer = runningHttpServer;
+    final Uri uri = (httpServer == null) ?
+      null : httpServer.networkProxy.getUri(httpServer.logoConnector.getLocalPort());
+    return (uri == null) ?
+      null : uri.buildUpon().appendEncodedPath(ExportHandler.EXPORT_PATH).build();
+  }
+
+  // Requests of other connectors are left unhandled
+  @NonNull
+  private static ContextHandler getConnectorContext(
+    @NonNull String connectorName, @NonNull Handler handler) {
+    final ContextHandler contextHandler = new ContextHandler("/");
+    contextHandler.setConnectorNames(new String[]{connectorName});
+    contextHandler.setHandler(handler);
+    return contextHandler;
+  }
+
+  // NIO connector on any free port.
+  // Requests are rejected when all threads are busy and queue is full.
+  @NonNull
+  private static SelectChannelConnector createConnector(
+    @NonNull String name, int threads, int queueSize, int idleTimeout) {
+    final QueuedThreadPool queuedThreadPool = new QueuedThreadPool();
+    queuedThreadPool.setName(LOG_TAG + ":" + name);
+    queuedThreadPool.setMinThreads(CONNECTOR_THREADS);
+    queuedThreadPool.setMaxThreads(CONNECTOR_THREADS + threads);
+    queuedThreadPool.setMaxQueued(queueSize);
+    final SelectChannelConnector selectChannelConnector = new SelectChannelConnector();
+    selectChannelConnector.setName(name);
+    selectChannelConnector.setPort(0);
+    selectChannelConnector.setAcceptors(1);
+    selectChannelConnector.setAcceptQueueSize(queueSize);
+    selectChannelConnector.setMaxIdleTime(idleTimeout);
+    selectChannelConnector.setThreadPool(queuedThreadPool);
+    return selectChannelConnector;
+  }
+
+  // Logo files of former icons of radio
+  private void deleteFormerLogoFiles(@NonNull Radio radio, @NonNull String name) {
+    final String prefix = LogoHandler.getLogoFilePrefix(radio.getIconFile());
+    final File[] files = context.getFilesDir().listFiles(
+      (dir, fileName) -> fileName.startsWith(prefix) && !fileName.startsWith(name));
+    if (files != null) {
+      for (File file : files) {
+        if (!file.delete()) {
+          Log.i(LOG_TAG, "deleteFormerLogoFiles: failed to delete " + file.getName());
+        }
+      }
+    }
+  }
+
   private int getPort() {
-    return server.getConnectors()[0].getLocalPort();
+    return streamConnector.getLocalPort();
   }
 
   public interface Listener {
     void onError();
   }
+
+  // Server sizing; defaults fit low-end devices
+  public static class Profile {
+    public static final Profile DEFAULT = new Profile(4, 2, 8, 300000, 30000);
+    private final int streamsMax;
+    private final int logoThreads;
+    private final int acceptQueueSize;
+    private final int streamIdleTimeout;
+    private final int logoIdleTimeout;
+
+    // Timeouts in ms
+    public Profile(
+      int streamsMax,
+      int logoThreads,
+      int acceptQueueSize,
+      int streamIdleTimeout,
+      int logoIdleTimeout) {
+      this.streamsMax = streamsMax;
+      this.logoThreads = logoThreads;
+      this.acceptQueueSize = acceptQueueSize;
+      this.streamIdleTimeout = streamIdleTimeout;
+      this.logoIdleTimeout = logoIdleTimeout;
+    }
+
+    // Maximum number of concurrent radio streams
+    public int getStreamsMax() {
+      return streamsMax;
+    }
+
+    public int getLogoThreads() {
+      return logoThreads;
+    }
+
+    public int getAcceptQueueSize() {
+      return acceptQueueSize;
+    }
+
+    public int getStreamIdleTimeout() {
+      return streamIdleTimeout;
+    }
+
+    public int getLogoIdleTimeout() {
+      return logoIdleTimeout;
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.watea.radio_upnp.BuildConfig;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Hashtable;
+import java.util.Map;
+
+// ICY metadata block parser: Key1='value1';Key2='value2';...
+// Raw bytes are scanned; nothing is decoded nor allocated if block is same as previous one.
+// Malformed entries are skipped, truncated ones are ignored.
+public class IcyMetadataParser {
+  public static final String STREAM_TITLE = "StreamTitle";
+  public static final String STREAM_URL = "StreamUrl";
+  private static final String LOG_TAG = IcyMetadataParser.class.getName();
+  private static final byte EQUAL = '=';
+  private static final byte QUOTE = '\'';
+  private static final byte SEMICOLON = ';';
+  @NonNull
+  private final CharsetDecoder charsetDecoder;
+  @NonNull
+  private final byte[] previous;
+  private final Map<String, String> values = new Hashtable<>();
+  private int previousLength = -1;
+
+  public IcyMetadataParser(@NonNull CharsetDecoder charsetDecoder, int capacity) {
+    this.charsetDecoder = charsetDecoder;
+    previous = new byte[capacity];
+  }
+
+  // Returns false if block is same as previous one
+  public boolean parse(@NonNull byte[] metadata, int length) {
+    if (isPrevious(metadata, length)) {
+      return false;
+    }
+    // Block larger than capacity is parsed, but not kept as previous one
+    if (length > previous.length) {
+      Log.w(LOG_TAG, "parse: metadata block exceeds capacity: " + length);
+      previousLength = -1;
+    } else {
+      System.arraycopy(metadata, 0, previous, 0, length);
+      previousLength = length;
+    }
+    values.clear();
+    int index = 0;
+    // Zero padding ends data
+    while ((index < length) && (metadata[index] != 0)) {
+      final int equal = indexOf(metadata, length, index, EQUAL);
+      // Truncated
+      if (equal < 0) {
+        break;
+      }
+      // Malformed key: skip to next entry
+      final int keySeparator = indexOf(metadata, equal, index, SEMICOLON);
+      if (keySeparator >= 0) {
+        index = keySeparator + 1;
+        continue;
+      }
+      // Malformed value: skip to next entry
+      if ((equal + 1 >= length) || (metadata[equal + 1] != QUOTE)) {
+        final int next = indexOf(metadata, length, equal, SEMICOLON);
+        if (next < 0) {
+          break;
+        }
+        index = next + 1;
+        continue;
+      }
+      final int valueStart = equal + 2;
+      final int valueEnd = indexOfValueEnd(metadata, length, valueStart);
+      // Truncated
+      if (valueEnd < 0) {
+        break;
+      }
+      final String key =
+        new String(metadata, index, equal - index, StandardCharsets.US_ASCII).trim();
+      final String value = decode(metadata, valueStart, valueEnd);
+      if (value != null) {
+        values.put(key, value);
+      }
+      index = valueEnd + 2;
+    }
+    if (BuildConfig.DEBUG) {
+      Log.d(LOG_TAG, "Size|Metadata: " + length + "|" + values);
+    }
+    return true;
+  }
+
+  // Value of last parsed block, null if not found
+  @Nullable
+  public String get(@NonNull String key) {
+    return values.get(key);
+  }
+
+  private boolean isPrevious(@NonNull byte[] metadata, int length) {
+    if (length != previousLength) {
+      return false;
+    }
+    for (int index = 0; index < length; index++) {
+      if (metadata[index] != previous[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // -1 if not found
+  private int indexOf(@NonNull byte[] metadata, int length, int from, byte searched) {
+    for (int index = from; index < length; index++) {
+      if (metadata[index] == searched) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  // Value ends with "';", quote may be found inside value.
+  // -1 if not found.
+  private int indexOfValueEnd(@NonNull byte[] metadata, int length, int from) {
+    for (int index = from; index + 1 < length; index++) {
+      if ((metadata[index] == QUOTE) && (metadata[index + 1] == SEMICOLON)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  @Nullable
+  private String decode(@NonNull byte[] metadata, int start, int end) {
+    try {
+      return charsetDecoder.decode(ByteBuffer.wrap(metadata, start, end - start)).toString();
+    } catch (CharacterCodingException characterCodingException) {
+      if (BuildConfig.DEBUG) {
+        Log.w(LOG_TAG, "Error decoding metadata", characterCodingException);
+      }
+      return null;
+    }
+  }
+}
\ No newline at end of file
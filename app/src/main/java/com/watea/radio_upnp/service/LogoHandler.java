@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import androidx.annotation.NonNull;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import java.io.File;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// Adds validation and cache headers to logo files; files are then served by ResourceHandler.
+// Logo file name depends on icon version, so a logo file never changes.
+public class LogoHandler extends AbstractHandler {
+  private static final String LOGO_FILE = "logo_";
+  private static final String EXTENSION = ".jpg";
+  private static final String CACHE_CONTROL = "public, max-age=31536000"; // 1 year
+
+  // Logo file name for icon file, changes with icon
+  @NonNull
+  public static String getLogoFileName(@NonNull File iconFile) {
+    return getLogoFilePrefix(iconFile) + Long.toHexString(iconFile.lastModified()) + EXTENSION;
+  }
+
+  // Common to all logo files of icon file
+  @NonNull
+  public static String getLogoFilePrefix(@NonNull File iconFile) {
+    final String name = iconFile.getName();
+    final int index = name.lastIndexOf('.');
+    return LOGO_FILE + ((index < 0) ? name : name.substring(0, index)) + "_";
+  }
+
+  @Override
+  public void handle(
+    String target,
+    Request baseRequest,
+    HttpServletRequest request,
+    HttpServletResponse response) {
+    if ((baseRequest == null) ||
+      (target == null) ||
+      !target.startsWith("/" + LOGO_FILE) ||
+      !target.endsWith(EXTENSION)) {
+      return;
+    }
+    final String eTag = "\"" + target.substring(1) + "\"";
+    response.setHeader("ETag", eTag);
+    response.setHeader("Cache-Control", CACHE_CONTROL);
+    final String ifNoneMatch = request.getHeader("If-None-Match");
+    if ((ifNoneMatch != null) && ifNoneMatch.contains(eTag)) {
+      baseRequest.setHandled(true);
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+    // Else ResourceHandler serves file, with Last-Modified
+  }
+}
\ No newline at end of file
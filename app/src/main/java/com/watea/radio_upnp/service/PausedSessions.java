@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Executor;
+
+// Current controller, and streaming sessions waiting for their controller to be resumed.
+// Paused sessions don't hold any thread; they are run again on executor.
+final class PausedSessions {
+  @NonNull
+  private final Map<RadioHandler.Controller, List<Runnable>> sessions = new Hashtable<>();
+  @NonNull
+  private final Executor executor;
+  @Nullable
+  private volatile RadioHandler.Controller controller = null;
+
+  PausedSessions(@NonNull Executor executor) {
+    this.executor = executor;
+  }
+
+  @Nullable
+  RadioHandler.Controller getController() {
+    return controller;
+  }
+
+  // Sessions of former controller are run again, so that they end
+  void setController(@Nullable RadioHandler.Controller controller) {
+    synchronized (sessions) {
+      this.controller = controller;
+    }
+    resumeAll();
+  }
+
+  // Session is run again at once if controller has been resumed or replaced meanwhile.
+  // Returns true if session is parked.
+  boolean park(@NonNull RadioHandler.Controller controller, @NonNull Runnable session) {
+    synchronized (sessions) {
+      if (controller.isPaused() && (controller == this.controller)) {
+        List<Runnable> controllerSessions = sessions.get(controller);
+        if (controllerSessions == null) {
+          sessions.put(controller, controllerSessions = new Vector<>());
+        }
+        controllerSessions.add(session);
+        return true;
+      }
+    }
+    executor.execute(session);
+    return false;
+  }
+
+  // Shall be called once controller is no longer paused
+  void resume(@NonNull RadioHandler.Controller controller) {
+    final List<Runnable> controllerSessions;
+    synchronized (sessions) {
+      controllerSessions = sessions.remove(controller);
+    }
+    if (controllerSessions != null) {
+      for (Runnable session : controllerSessions) {
+        executor.execute(session);
+      }
+    }
+  }
+
+  void resumeAll() {
+    final List<Runnable> allSessions = new Vector<>();
+    synchronized (sessions) {
+      for (List<Runnable> controllerSessions : sessions.values()) {
+        allSessions.addAll(controllerSessions);
+      }
+      sessions.clear();
+    }
+    for (Runnable session : allSessions) {
+      executor.execute(session);
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Persistent cache of upstream probe results, per radio URL.
+// Entries are returned even when stale; a refresh is then launched in background.
+// Only what is used on play path is kept: content type.
+public class ProbeCache {
+  private static final String LOG_TAG = ProbeCache.class.getName();
+  private static final String PREFERENCES = "probe_cache";
+  private static final String KEY_ENTRIES = "entries";
+  private static final String URL = "url";
+  private static final String CONTENT_TYPE = "content_type";
+  private static final String TIME = "time";
+  private static final long TTL = 24 * 60 * 60 * 1000L; // ms
+  private static final int ENTRIES_MAX = 200;
+  // Changes within this delay are saved at once
+  private static final int SAVE_DELAY = 5000; // ms
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  @NonNull
+  private final SharedPreferences sharedPreferences;
+  // Access ordered, eldest is least recently used
+  private final Map<String, Probe> probes = new LinkedHashMap<String, Probe>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Entry<String, Probe> eldest) {
+      return (size() > ENTRIES_MAX);
+    }
+  };
+  private final Set<String> refreshing = new HashSet<>();
+  private final Runnable saver = this::save;
+  private boolean isSavePending = false;
+
+  public ProbeCache(@NonNull Context context) {
+    sharedPreferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    load();
+  }
+
+  // Cached result, refreshed in background if stale
+  @Nullable
+  public Probe get(@NonNull URL url) {
+    final Probe probe;
+    synchronized (probes) {
+      probe = probes.get(url.toString());
+    }
+    if ((probe != null) && !probe.isFresh()) {
+      refresh(url);
+    }
+    return probe;
+  }
+
+  // Blocking, shall not be called on main thread
+  @Nullable
+  public Probe probe(@NonNull URL url) {
+    HttpURLConnection httpURLConnection = null;
+    try {
+      httpURLConnection = new RadioURL(url).getActualHttpURLConnection();
+      if (httpURLConnection.getResponseCode() / 100 != 2) {
+        Log.i(LOG_TAG, "Probe failed with status " + httpURLConnection.getResponseCode() +
+          " on: " + url);
+        return null;
+      }
+      final String contentType = RadioURL.getMimeType(httpURLConnection);
+      final Probe probe = new Probe(contentType, System.currentTimeMillis());
+      Log.d(LOG_TAG, "Probe done on: " + url + " => " + contentType);
+      put(url, probe);
+      return probe;
+    } catch (IOException iOException) {
+      // Fires also in case of timeout; existing entry is kept
+      Log.i(LOG_TAG, "Probe IO exception: " + url, iOException);
+      return null;
+    } finally {
+      if (httpURLConnection != null) {
+        httpURLConnection.disconnect();
+      }
+    }
+  }
+
+  public void refresh(@NonNull URL url) {
+    final String key = url.toString();
+    synchronized (refreshing) {
+      if (!refreshing.add(key)) {
+        return;
+      }
+    }
+    new Thread(() -> {
+      probe(url);
+      synchronized (refreshing) {
+        refreshing.remove(key);
+      }
+    }).start();
+  }
+
+  public void remove(@NonNull URL url) {
+    synchronized (probes) {
+      probes.remove(url.toString());
+    }
+    scheduleSave();
+  }
+
+  private void put(@NonNull URL url, @NonNull Probe probe) {
+    synchronized (probes) {
+      probes.put(url.toString(), probe);
+    }
+    scheduleSave();
+  }
+
+  private void scheduleSave() {
+    synchronized (probes) {
+      if (isSavePending) {
+        return;
+      }
+      isSavePending = true;
+    }
+    handler.postDelayed(saver, SAVE_DELAY);
+  }
+
+  private void load() {
+    final String entries = sharedPreferences.getString(KEY_ENTRIES, null);
+    if (entries == null) {
+      return;
+    }
+    try {
+      final JSONArray jSONArray = new JSONArray(entries);
+      synchronized (probes) {
+        // Stored from least to most recently used
+        for (int i = 0; i < jSONArray.length(); i++) {
+          final JSONObject jSONObject = jSONArray.getJSONObject(i);
+          probes.put(jSONObject.getString(URL), new Probe(jSONObject));
+        }
+      }
+    } catch (JSONException jSONException) {
+      Log.w(LOG_TAG, "Probe cache dropped, unable to read", jSONException);
+    }
+  }
+
+  // Asynchronous write
+  private void save() {
+    final JSONArray jSONArray = new JSONArray();
+    try {
+      synchronized (probes) {
+        isSavePending = false;
+        for (Map.Entry<String, Probe> entry : probes.entrySet()) {
+          jSONArray.put(entry.getValue().toJSONObject().put(URL, entry.getKey()));
+        }
+      }
+    } catch (JSONException jSONException) {
+      Log.w(LOG_TAG, "Probe cache not saved", jSONException);
+      return;
+    }
+    sharedPreferences.edit().putString(KEY_ENTRIES, jSONArray.toString()).apply();
+  }
+
+  public static class Probe {
+    @Nullable
+    private final String contentType;
+    private final long time; // Last success
+
+    private Probe(@Nullable String contentType, long time) {
+      this.contentType = contentType;
+      this.time = time;
+    }
+
+    private Probe(@NonNull JSONObject jSONObject) throws JSONException {
+      this(
+        jSONObject.has(CONTENT_TYPE) ? jSONObject.getString(CONTENT_TYPE) : null,
+        jSONObject.getLong(TIME));
+    }
+
+    @Nullable
+    public String getContentType() {
+      return contentType;
+    }
+
+    public long getTime() {
+      return time;
+    }
+
+    public boolean isFresh() {
+      return (System.currentTimeMillis() - time < TTL);
+    }
+
+    @NonNull
+    private JSONObject toJSONObject() throws JSONException {
+      return new JSONObject()
+        .putOpt(CONTENT_TYPE, contentType)
+        .put(TIME, time);
+    }
+  }
+}
\ No newline at end of file
@@ -29,50 +29,76 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.watea.radio_upnp.BuildConfig;
 import com.watea.radio_upnp.model.Radio;
 
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
+import java.util.Hashtable;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 public class RadioHandler extends AbstractHandler {
   private static final String LOG_TAG = RadioHandler.class.getName();
-  private static final int METADATA_MAX = 256;
+  // Subscriber read timeout, to check controller (ms)
+  private static final int READ_TIMEOUT = 500;
   private static final String PARAMS = "params";
   private static final String SEPARATOR = "_";
-  private static final Pattern PATTERN_ICY = Pattern.compile(".*StreamTitle='([^;]*)';.*");
   @NonNull
   private final String userAgent;
   @NonNull
   private final Callback callback;
   @NonNull
   private final Listener listener;
-  @Nullable
-  private Controller controller = null;
+  // One radio connection per radio, shared by all LAN clients
+  private final Map<Long, BroadcastHub> broadcastHubs = new Hashtable<>();
+  private final BroadcastHub.Listener broadcastHubListener = broadcastHub -> {
+    synchronized (broadcastHubs) {
+      final Long radioId = broadcastHub.getRadio().getId();
+      if (broadcastHubs.get(radioId) == broadcastHub) {
+        broadcastHubs.remove(radioId);
+      }
+    }
+  };
+  // Last radio headers, to answer HEAD requests without connection
+  private final Map<Long, Map<String, String>> radioHeaders = new Hashtable<>();
+  // Runs resumed sessions
+  @NonNull
+  private final ThreadPoolExecutor streamingExecutor;
+  // Holds controller; paused sessions don't hold any thread
+  @NonNull
+  private final PausedSessions pausedSessions;
+  // Concurrent streaming sessions limit
+  @NonNull
+  private final Semaphore streamingSessions;
 
   public RadioHandler(
     @NonNull String userAgent,
     @NonNull Callback callback,
-    @NonNull Listener listener) {
+    @NonNull Listener listener,
+    int streamsMax) {
     super();
     this.userAgent = userAgent;
     this.callback = callback;
     this.listener = listener;
+    streamingSessions = new Semaphore(streamsMax);
+    streamingExecutor = new ThreadPoolExecutor(
+      streamsMax, streamsMax, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    streamingExecutor.allowCoreThreadTimeOut(true);
+    pausedSessions = new PausedSessions(streamingExecutor);
   }
 
   // Add ID and lock key to given URI as query parameter
@@ -86,14 +112,14 @@ public class RadioHandler extends AbstractHandler {
       .build();
   }
 
-  public synchronized void resume() {
-    notifyAll();
+  // Sessions paused by controller are run again; they pause again if it is still paused
+  public void resume(@NonNull Controller controller) {
+    pausedSessions.resume(controller);
   }
 
   // Must be called
   public void setController(@Nullable Controller controller) {
-    this.controller = controller;
-    resume();
+    pausedSessions.setController(controller);
   }
 
   @Override
@@ -107,6 +133,11 @@ public class RadioHandler extends AbstractHandler {
       Log.d(LOG_TAG, "Unexpected request received: request || baseRequest is null.");
       return;
     }
+    // Paused sessions are never dispatched again by server
+    if (request.getDispatcherType() == DispatcherType.ASYNC) {
+      Log.d(LOG_TAG, "Unexpected request received: async dispatch.");
+      return;
+    }
     final String param = request.getParameter(PARAMS);
     if (param == null) {
       Log.d(LOG_TAG, "Unexpected request received: param is null.");
@@ -116,6 +147,7 @@ public class RadioHandler extends AbstractHandler {
     final String[] params = param.split(SEPARATOR);
     final String radioId = (params.length > 0) ? params[0] : null;
     final String lockKey = (params.length > 1) ? params[1] : null;
+    final Controller controller = pausedSessions.getController();
     if ((radioId == null) || (lockKey == null) || (controller == null)) {
       Log.i(LOG_TAG, "Unexpected request received. Radio || UUID || controller is null.");
     } else {
@@ -129,8 +161,19 @@ public class RadioHandler extends AbstractHandler {
     }
   }
 
-  private synchronized void pause() throws InterruptedException {
-    wait();
+  @NonNull
+  public List<BroadcastHub> getBroadcastHubs() {
+    return new Vector<>(broadcastHubs.values());
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    for (BroadcastHub broadcastHub : getBroadcastHubs()) {
+      broadcastHub.close();
+    }
+    // Let paused sessions end
+    pausedSessions.resumeAll();
+    super.doStop();
   }
 
   private void handleConnection(
@@ -142,161 +185,141 @@ public class RadioHandler extends AbstractHandler {
     final String method = request.getMethod();
     Log.d(LOG_TAG,
       "handleConnection: entering for " + method + " " + radio.getName() + "; " + lockKey);
-    // For further use
-    final boolean isGet = (method != null) && method.equals("GET");
+    try {
+      final Map<String, String> headers = radioHeaders.get(radio.getId());
+      // Range is ignored on GET, as stream is live
+      if ("GET".equals(method)) {
+        handleGet(request, response, radio, lockKey, controller);
+      } else if (headers == null) {
+        handleHead(response, radio, controller);
+      } else {
+        Log.d(LOG_TAG, "HEAD answered from known headers");
+        sendHeaders(response, headers, controller);
+      }
+    } catch (Exception exception) {
+      Log.d(LOG_TAG, "handleConnection error", exception);
+    }
+    Log.d(LOG_TAG, "handleConnection: leaving");
+  }
+
+  // Radio stream is shared by all LAN clients of the radio
+  private void handleGet(
+    @NonNull final HttpServletRequest request,
+    @NonNull final HttpServletResponse response,
+    @NonNull final Radio radio,
+    @NonNull final String lockKey,
+    @NonNull final Controller controller) throws IOException {
+    boolean isAcquired = streamingSessions.tryAcquire();
+    if (!isAcquired) {
+      Log.i(LOG_TAG, "Too many streams, request rejected");
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    try {
+      final StreamingSession streamingSession =
+        createStreamingSession(request, response, radio, lockKey, controller);
+      // Permit now belongs to session, released when session ends
+      isAcquired = false;
+      // First run in server thread
+      streamingSession.run();
+    } finally {
+      if (isAcquired) {
+        streamingSessions.release();
+      }
+    }
+  }
+
+  // Subscriber is released on failure
+  @NonNull
+  private StreamingSession createStreamingSession(
+    @NonNull final HttpServletRequest request,
+    @NonNull final HttpServletResponse response,
+    @NonNull final Radio radio,
+    @NonNull final String lockKey,
+    @NonNull final Controller controller) throws IOException {
+    BroadcastHub broadcastHub;
+    BroadcastHub.Subscriber subscriber;
+    synchronized (broadcastHubs) {
+      broadcastHub = broadcastHubs.get(radio.getId());
+      subscriber = (broadcastHub == null) ? null : broadcastHub.subscribe(lockKey, controller);
+      if (subscriber == null) {
+        broadcastHub = new BroadcastHub(radio, userAgent, listener, broadcastHubListener);
+        broadcastHubs.put(radio.getId(), broadcastHub);
+        subscriber = broadcastHub.subscribe(lockKey, controller);
+        assert subscriber != null;
+      } else {
+        Log.d(LOG_TAG, "Radio stream shared with another client");
+      }
+    }
+    try {
+      broadcastHub.open();
+      radioHeaders.put(radio.getId(), broadcastHub.getHeaders());
+      sendHeaders(response, broadcastHub.getHeaders(), controller);
+      final String rate = broadcastHub.getRate();
+      // Flush information, send rate
+      listener.onNewInformation("", rate, lockKey);
+      // Radio may be already playing
+      final String information = broadcastHub.getInformation();
+      if (information != null) {
+        listener.onNewInformation(information, rate, lockKey);
+      }
+      return new StreamingSession(
+        request, response.getOutputStream(), broadcastHub, subscriber, controller);
+    } catch (IOException | RuntimeException exception) {
+      broadcastHub.unsubscribe(subscriber);
+      throw exception;
+    }
+  }
+
+  // Headers only
+  private void handleHead(
+    @NonNull final HttpServletResponse response,
+    @NonNull final Radio radio,
+    @NonNull final Controller controller) throws IOException {
     // Create WAN connection
     HttpURLConnection httpURLConnection = null;
-    try (OutputStream outputStream = response.getOutputStream()) {
+    try {
       // Accept M3U format
       httpURLConnection = new RadioURL(radio.getUrlFromM3u()).getActualHttpURLConnection(
-        connection -> {
+        connection ->
           // Default request method GET is used as some radio server handles HEAD too bad
-          connection.setRequestProperty("User-Agent", userAgent);
-          // ICY request
-          if (isGet) {
-            connection.setRequestProperty("Icy-Metadata", "1");
-          }
-        });
+          connection.setRequestProperty("User-Agent", userAgent));
       Log.d(LOG_TAG, "Connected to radio URL");
-      // Response to LAN
-      for (String header : httpURLConnection.getHeaderFields().keySet()) {
-        // ICY data not forwarded, as only used here
-        if ((header != null) && !header.toLowerCase().startsWith("icy-")) {
-          final String value = httpURLConnection.getHeaderField(header);
-          if (value != null) {
-            response.setHeader(header, value);
-          }
-        }
-      }
-      if (controller instanceof UpnpController) {
-        // DLNA header, as found in documentation, not sure it is useful (should not)
-        response.setHeader("contentFeatures.dlna.org", "*");
-        response.setHeader("transferMode.dlna.org", "Streaming");
-        // Force ContentType as some devices require it
-        final String contentType = ((UpnpController) controller).getContentType();
-        if (contentType == null) {
-          // Should not happen
-          Log.e(LOG_TAG, "Internal failure; ContentType is null");
-        } else {
-          Log.d(LOG_TAG, "UPnP connection; ContentType forced: " + contentType);
-          response.setContentType(contentType);
-        }
-      }
-      response.setStatus(HttpServletResponse.SC_OK);
-      response.flushBuffer();
-      Log.d(LOG_TAG, "Response sent to LAN client");
-      if (isGet) {
-        // Try to find charset
-        final String contentEncoding = httpURLConnection.getContentEncoding();
-        final Charset charset = (contentEncoding == null) ?
-          Charset.defaultCharset() : Charset.forName(contentEncoding);
-        // Find metadata place, 0 if undefined
-        int metadataOffset = 0;
-        final List<String> headerMeta = httpURLConnection.getHeaderFields().get("icy-metaint");
-        try {
-          metadataOffset = (headerMeta == null) ? 0 : Integer.parseInt(headerMeta.get(0));
-        } catch (NumberFormatException numberFormatException) {
-          Log.w(LOG_TAG, "Malformed header icy-metaint");
-        }
-        if (metadataOffset > 0) {
-          Log.i(LOG_TAG, "Metadata expected at index: " + metadataOffset);
-        } else if (metadataOffset == 0) {
-          Log.i(LOG_TAG, "No metadata expected");
-        } else {
-          metadataOffset = 0;
-          Log.w(LOG_TAG, "Wrong metadata value");
-        }
-        handleStreaming(
-          httpURLConnection.getInputStream(),
-          charset.newDecoder(),
-          metadataOffset,
-          outputStream,
-          httpURLConnection.getHeaderField("icy-br"),
-          lockKey,
-          controller);
-      }
-    } catch (Exception exception) {
-      Log.d(LOG_TAG, "handleConnection error", exception);
+      final Map<String, String> headers = BroadcastHub.getForwardedHeaders(httpURLConnection);
+      radioHeaders.put(radio.getId(), headers);
+      sendHeaders(response, headers, controller);
     } finally {
       if (httpURLConnection != null) {
         httpURLConnection.disconnect();
       }
     }
-    Log.d(LOG_TAG, "handleConnection: leaving");
   }
 
-  // Forward stream data and handle metadata
-  // metadataOffset = 0 if no metadata
-  private void handleStreaming(
-    @NonNull final InputStream inputStream,
-    @NonNull final CharsetDecoder charsetDecoder,
-    final int metadataOffset,
-    @NonNull final OutputStream outputStream,
-    @Nullable final String rate,
-    @NonNull final String lockKey,
-    @NonNull final Controller controller) throws IOException, InterruptedException {
-    Log.d(LOG_TAG, "handleStreaming: entering");
-    // Flush information, send rate
-    listener.onNewInformation("", rate, lockKey);
-    final byte[] buffer = new byte[1];
-    final ByteBuffer metadataBuffer = ByteBuffer.allocate(METADATA_MAX);
-    int metadataBlockBytesRead = 0;
-    int metadataSize = 0;
-    // Stop if not current controller
-    while (controller == this.controller) {
-      if (this.controller.isPaused()) {
-        pause();
-      }
-      final int readResult = inputStream.read(buffer);
-      if (readResult < 0) {
-        Log.d(LOG_TAG, "No more data to read");
-        break;
-      }
-      if (readResult > 0) {
-        // Only stream data are transferred
-        if ((metadataOffset == 0) || (++metadataBlockBytesRead <= metadataOffset)) {
-          outputStream.write(buffer);
-        } else {
-          // Metadata: look for title information
-          final int metadataIndex = metadataBlockBytesRead - metadataOffset - 1;
-          // First byte gives size (16 bytes chunks) to read for metadata
-          if (metadataIndex == 0) {
-            metadataSize = buffer[0] * 16;
-            metadataBuffer.clear();
-          } else if (metadataIndex <= METADATA_MAX) {
-            // Other bytes are metadata
-            metadataBuffer.put(buffer[0]);
-          }
-          // End of metadata, extract pattern
-          if (metadataIndex == metadataSize) {
-            CharBuffer metadata = null;
-            metadataBuffer.flip();
-            // Exception blocked on metadata
-            try {
-              metadata = charsetDecoder.decode(metadataBuffer);
-            } catch (Exception exception) {
-              if (BuildConfig.DEBUG) {
-                Log.w(LOG_TAG, "Error decoding metadata", exception);
-              }
-            }
-            if ((metadata != null) && (metadata.length() > 0)) {
-              if (BuildConfig.DEBUG) {
-                Log.d(LOG_TAG, "Size|Metadata: " + metadataSize + "|" + metadata);
-              }
-              final Matcher matcher = PATTERN_ICY.matcher(metadata);
-              // Tell listener
-              final String information =
-                (matcher.find() && (matcher.groupCount() > 0)) ? matcher.group(1) : null;
-              if (information != null) {
-                listener.onNewInformation(information, rate, lockKey);
-              }
-            }
-            metadataBlockBytesRead = 0;
-          }
-        }
+  // Response to LAN
+  private void sendHeaders(
+    @NonNull final HttpServletResponse response,
+    @NonNull final Map<String, String> headers,
+    @NonNull final Controller controller) throws IOException {
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      response.setHeader(header.getKey(), header.getValue());
+    }
+    if (controller instanceof UpnpController) {
+      // DLNA header, as found in documentation, not sure it is useful (should not)
+      response.setHeader("contentFeatures.dlna.org", "*");
+      response.setHeader("transferMode.dlna.org", "Streaming");
+      // Force ContentType as some devices require it
+      final String contentType = ((UpnpController) controller).getContentType();
+      if (contentType == null) {
+        // Should not happen
+        Log.e(LOG_TAG, "Internal failure; ContentType is null");
+      } else {
+        Log.d(LOG_TAG, "UPnP connection; ContentType forced: " + contentType);
+        response.setContentType(contentType);
       }
     }
-    Log.d(LOG_TAG, "handleStreaming: leaving");
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.flushBuffer();
+    Log.d(LOG_TAG, "Response sent to LAN client");
   }
 
   public interface Listener {
@@ -319,4 +342,105 @@ public class RadioHandler extends AbstractHandler {
     @Nullable
     String getContentType();
   }
+
+  // Forward stream data from subscriber buffer to LAN client.
+  // When its controller is paused, session releases its thread until resume() is called.
+  private class StreamingSession implements Runnable {
+    @NonNull
+    private final HttpServletRequest request;
+    @NonNull
+    private final OutputStream outputStream;
+    @NonNull
+    private final BroadcastHub broadcastHub;
+    @NonNull
+    private final BroadcastHub.Subscriber subscriber;
+    @NonNull
+    private final Controller controller;
+    @NonNull
+    private final RelayBuffers relayBuffers = RelayBuffers.take();
+    // Set once session has been paused
+    @Nullable
+    private AsyncContext asyncContext = null;
+    private boolean isResumed = false;
+
+    private StreamingSession(
+      @NonNull HttpServletRequest request,
+      @NonNull OutputStream outputStream,
+      @NonNull BroadcastHub broadcastHub,
+      @NonNull BroadcastHub.Subscriber subscriber,
+      @NonNull Controller controller) {
+      this.request = request;
+      this.outputStream = outputStream;
+      this.broadcastHub = broadcastHub;
+      this.subscriber = subscriber;
+      this.controller = controller;
+    }
+
+    @Override
+    public void run() {
+      Log.d(LOG_TAG, "StreamingSession: running for " + subscriber.getLockKey());
+      boolean isPaused = false;
+      try {
+        isPaused = stream();
+      } catch (Exception exception) {
+        Log.d(LOG_TAG, "StreamingSession error", exception);
+      } finally {
+        if (!isPaused) {
+          release();
+        }
+      }
+    }
+
+    // Returns true if paused
+    private boolean stream() throws IOException, InterruptedException {
+      // Stop if not current controller
+      while (controller == pausedSessions.getController()) {
+        // A resumed session streams at least once
+        if (controller.isPaused() && !isResumed) {
+          pause();
+          return true;
+        }
+        isResumed = false;
+        final int readResult = subscriber.read(relayBuffers.audio, READ_TIMEOUT);
+        if (readResult < 0) {
+          Log.d(LOG_TAG, "No more data to read");
+          break;
+        }
+        outputStream.write(relayBuffers.audio, 0, readResult);
+      }
+      return false;
+    }
+
+    private void pause() {
+      Log.d(LOG_TAG, "StreamingSession: paused for " + subscriber.getLockKey());
+      // First pause is always in server thread
+      if (asyncContext == null) {
+        asyncContext = request.startAsync();
+        asyncContext.setTimeout(0);
+      }
+      // Run again at once if controller has been resumed meanwhile
+      pausedSessions.park(controller, this::resume);
+    }
+
+    private void resume() {
+      isResumed = true;
+      run();
+    }
+
+    private void release() {
+      relayBuffers.release();
+      broadcastHub.unsubscribe(subscriber);
+      streamingSessions.release();
+      // Server thread has been left, response must be completed here
+      if (asyncContext != null) {
+        try {
+          outputStream.close();
+        } catch (IOException iOException) {
+          Log.d(LOG_TAG, "StreamingSession: error closing stream", iOException);
+        }
+        asyncContext.complete();
+      }
+      Log.d(LOG_TAG, "StreamingSession: released for " + subscriber.getLockKey());
+    }
+  }
 }
\ No newline at end of file
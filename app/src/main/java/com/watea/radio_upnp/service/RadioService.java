@@ -86,6 +86,7 @@ public class RadioService
     new MediaSessionCompatCallback();
   private NotificationManagerCompat notificationManager;
   private UpnpActionController upnpActionController = null;
+  private ProbeCache probeCache = null;
   private Radio radio = null;
   private AndroidUpnpService androidUpnpService = null;
   private MediaSessionCompat session;
@@ -147,12 +148,15 @@ public class RadioService
     }
     // Radio library access
     radioLibrary = new RadioLibrary(this);
+    // Persistent stream probe results
+    probeCache = new ProbeCache(this);
     // Init HTTP Server
     httpServer = new HttpServer(
       this,
       getString(R.string.app_name),
       radioLibrary::getFrom,
       this,
+      radioLibrary,
       () -> {
         Log.d(LOG_TAG, "HTTP Server error");
         stopSelf();
@@ -252,6 +256,8 @@ public class RadioService
             // Relaunch now allowed
             isAllowedToRewind = true;
           case PlaybackStateCompat.STATE_BUFFERING:
+            // Sessions paused meanwhile are run again, state is no longer paused
+            httpServer.resumeHandler(playerAdapter);
             startForeground(NOTIFICATION_ID, getNotification());
             break;
           case PlaybackStateCompat.STATE_PAUSED:
@@ -419,7 +425,7 @@ public class RadioService
     public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
       androidUpnpService = (AndroidUpnpService) iBinder;
       if (androidUpnpService != null) {
-        upnpActionController = new UpnpActionController(androidUpnpService);
+        upnpActionController = new UpnpActionController(androidUpnpService, probeCache);
       }
     }
 
@@ -501,7 +507,7 @@ public class RadioService
 
     @Override
     public void onPlay() {
-      httpServer.resumeHandler();
+      httpServer.resumeHandler(playerAdapter);
       playerAdapter.play();
     }
 
@@ -552,12 +558,16 @@ public class RadioService
     }
 
     // Do nothing if no radio fund
+    // Within preferred radios if user is browsing them
     private void skipTo(int direction) {
-      final Long nextRadioId = radioLibrary.get(Long.valueOf(getMediaId()), direction);
+      final Bundle extras = mediaController.getExtras();
+      final Long nextRadioId = radioLibrary.get(
+        Long.valueOf(getMediaId()),
+        direction,
+        extras.getBoolean(getString(R.string.key_preferred_radios)));
       if (nextRadioId != null) {
         // Same extras are reused
-        mediaSessionCompatCallback.onPrepareFromMediaId(
-          nextRadioId.toString(), mediaController.getExtras());
+        mediaSessionCompatCallback.onPrepareFromMediaId(nextRadioId.toString(), extras);
       }
     }
   }
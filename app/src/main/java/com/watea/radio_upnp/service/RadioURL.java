@@ -32,10 +32,14 @@ import androidx.annotation.Nullable;
 
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 
+import org.apache.commons.io.IOUtils;
 import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
@@ -58,7 +62,20 @@ public class RadioURL {
   private static final int CONNECT_TIMEOUT =
     DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS * 2;
   private static final int READ_TIMEOUT = DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS * 2;
-  // Create the SSL connection for HTTPS
+  private static final long REDIRECTION_TTL = 30 * 60 * 1000L; // ms
+  private static final ResolutionCache redirections = new ResolutionCache(REDIRECTION_TTL);
+  // Bodies larger than this are not drained for connection reuse
+  private static final int DRAIN_MAX = 16 * 1024;
+  private static final int SSL_SESSION_CACHE_SIZE = 32;
+  private static final int SSL_SESSION_TIMEOUT = 60 * 60; // s
+  // Web pages are fetched as a browser, some sites reject other agents
+  private static final String BROWSER_USER_AGENT =
+    "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) " +
+      "Chrome/120.0.0.0 Mobile Safari/537.36";
+  private static final HttpURLConnectionConsumer BROWSER_HEADERS = httpURLConnection ->
+    httpURLConnection.setRequestProperty("User-Agent", BROWSER_USER_AGENT);
+  // Create the SSL connection for HTTPS.
+  // Shared by all connections, so TLS sessions are resumed.
   private static final SSLSocketFactory sSLSocketFactory;
 
   static {
@@ -67,6 +84,8 @@ public class RadioURL {
       sSLContext = SSLContext.getInstance("TLS");
       sSLContext.init(
         null, new TrustManager[]{new EasyX509TrustManager()}, new java.security.SecureRandom());
+      sSLContext.getClientSessionContext().setSessionCacheSize(SSL_SESSION_CACHE_SIZE);
+      sSLContext.getClientSessionContext().setSessionTimeout(SSL_SESSION_TIMEOUT);
     } catch (KeyManagementException | NoSuchAlgorithmException | KeyStoreException exception) {
       Log.e(LOG_TAG, "Error handling SSL connection", exception);
     }
@@ -84,7 +103,7 @@ public class RadioURL {
   public static Bitmap iconSearch(@NonNull URL url) {
     Bitmap result = null;
     try {
-      final Element head = Jsoup.connect(url.toString()).get().head();
+      final Element head = new RadioURL(url).getDocument().head();
       // Parse site data, try to accelerate
       for (Element element : head.getAllElements()) {
         if (element != head) {
@@ -110,6 +129,13 @@ public class RadioURL {
     return result;
   }
 
+  // Content-Type first asset is MIME type
+  @Nullable
+  public static String getMimeType(@NonNull HttpURLConnection httpURLConnection) {
+    final String contentType = httpURLConnection.getHeaderField("Content-Type");
+    return (contentType == null) ? null : contentType.split(";")[0].trim();
+  }
+
   // MIME type
   @Nullable
   public String getStreamContentType() {
@@ -117,12 +143,8 @@ public class RadioURL {
     HttpURLConnection httpURLConnection = null;
     try {
       httpURLConnection = getActualHttpURLConnection();
-      contentType = httpURLConnection.getHeaderField("Content-Type");
-      // If we get there, connection has occurred.
-      // Content-Type first asset is MIME type.
-      if (contentType != null) {
-        contentType = contentType.split(";")[0];
-      }
+      // If we get there, connection has occurred
+      contentType = getMimeType(httpURLConnection);
       Log.d(LOG_TAG, "Connection status/ContentType: " +
         httpURLConnection.getResponseCode() + "/" +
         ((contentType == null) ? "No ContentType" : contentType));
@@ -142,7 +164,7 @@ public class RadioURL {
     return getActualHttpURLConnection(null);
   }
 
-  // Handle redirection
+  // Handle redirection, known ones first
   // Consumer sets connection headers
   @NonNull
   public HttpURLConnection getActualHttpURLConnection(
@@ -150,40 +172,48 @@ public class RadioURL {
     if (uRL == null) {
       throw new IOException("getActualHttpURLConnection: URL is null");
     }
+    // Connection to known target is its validation
+    final URL target = redirections.get(uRL);
+    if (target != null) {
+      HttpURLConnection httpURLConnection = null;
+      try {
+        httpURLConnection = getHttpURLConnection(target, httpURLConnectionConsumer);
+        if (httpURLConnection.getResponseCode() / 100 == 2) {
+          Log.d(LOG_TAG, "Connection to known redirection: " + target);
+          return httpURLConnection;
+        }
+      } catch (IOException iOException) {
+        Log.d(LOG_TAG, "Known redirection failed: " + target, iOException);
+      }
+      if (httpURLConnection != null) {
+        release(httpURLConnection);
+      }
+      redirections.remove(uRL);
+    }
     HttpURLConnection httpURLConnection;
     int connectionTry = 0;
     URL uRL = this.uRL;
     Log.d(LOG_TAG, "Try connect to URL: " + uRL);
     do {
-      // Set headers
-      final URLConnection uRLConnection = uRL.openConnection();
-      if (uRLConnection instanceof HttpURLConnection) {
-        httpURLConnection = (HttpURLConnection) uRL.openConnection();
-      } else {
-        throw new IOException("getActualHttpURLConnection: URL is not HTTP");
-      }
-      httpURLConnection.setConnectTimeout(CONNECT_TIMEOUT);
-      httpURLConnection.setReadTimeout(READ_TIMEOUT);
-      httpURLConnection.setInstanceFollowRedirects(true);
-      if (httpURLConnection instanceof HttpsURLConnection) {
-        ((HttpsURLConnection) httpURLConnection).setSSLSocketFactory(sSLSocketFactory);
-      }
-      if (httpURLConnectionConsumer != null) {
-        httpURLConnectionConsumer.accept(httpURLConnection);
-      }
+      httpURLConnection = getHttpURLConnection(uRL, httpURLConnectionConsumer);
       // Get answer
       if (httpURLConnection.getResponseCode() / 100 == 3) {
         uRL = new URL(httpURLConnection.getHeaderField("Location"));
         Log.d(LOG_TAG, "Redirecting to URL: " + uRL);
+        release(httpURLConnection);
       } else {
         Log.d(LOG_TAG, "Connection to URL: " + uRL);
         break;
       }
     } while (connectionTry++ < CONNECTION_TRY);
+    // Remember redirection, including the ones followed by HttpURLConnection
+    uRL = httpURLConnection.getURL();
+    if ((httpURLConnection.getResponseCode() / 100 == 2) && !uRL.equals(this.uRL)) {
+      redirections.put(this.uRL, uRL);
+    }
     return httpURLConnection;
   }
 
-  // Redirection will not be handheld here
   @Nullable
   public Bitmap getBitmap() {
     if (uRL == null) {
@@ -191,13 +221,75 @@ public class RadioURL {
       return null;
     }
     try {
-      return BitmapFactory.decodeStream(uRL.openConnection().getInputStream());
+      final HttpURLConnection httpURLConnection = getActualHttpURLConnection();
+      try (InputStream inputStream = httpURLConnection.getInputStream()) {
+        return BitmapFactory.decodeStream(inputStream);
+      }
     } catch (Exception exception) {
       Log.i(LOG_TAG, "getBitmap: error decoding image on " + uRL, exception);
       return null;
     }
   }
 
+  // Whole body, connection is kept alive
+  @NonNull
+  public String getString() throws IOException {
+    try (InputStream inputStream =
+           getActualHttpURLConnection(BROWSER_HEADERS).getInputStream()) {
+      return IOUtils.toString(inputStream);
+    }
+  }
+
+  // HTML or XML document, connection is kept alive
+  @NonNull
+  public Document getDocument() throws IOException {
+    final HttpURLConnection httpURLConnection = getActualHttpURLConnection(BROWSER_HEADERS);
+    final String contentType = httpURLConnection.getContentType();
+    try (InputStream inputStream = httpURLConnection.getInputStream()) {
+      return Jsoup.parse(
+        inputStream,
+        null,
+        httpURLConnection.getURL().toString(),
+        ((contentType != null) && contentType.contains("xml")) ?
+          Parser.xmlParser() : Parser.htmlParser());
+    }
+  }
+
+  @NonNull
+  private static HttpURLConnection getHttpURLConnection(
+    @NonNull URL uRL,
+    @Nullable HttpURLConnectionConsumer httpURLConnectionConsumer) throws IOException {
+    final URLConnection uRLConnection = uRL.openConnection();
+    if (!(uRLConnection instanceof HttpURLConnection)) {
+      throw new IOException("getHttpURLConnection: URL is not HTTP");
+    }
+    final HttpURLConnection httpURLConnection = (HttpURLConnection) uRLConnection;
+    httpURLConnection.setConnectTimeout(CONNECT_TIMEOUT);
+    httpURLConnection.setReadTimeout(READ_TIMEOUT);
+    httpURLConnection.setInstanceFollowRedirects(true);
+    if (httpURLConnection instanceof HttpsURLConnection) {
+      ((HttpsURLConnection) httpURLConnection).setSSLSocketFactory(sSLSocketFactory);
+    }
+    // Set headers
+    if (httpURLConnectionConsumer != null) {
+      httpURLConnectionConsumer.accept(httpURLConnection);
+    }
+    return httpURLConnection;
+  }
+
+  // Consume what is left of a bounded body, so socket goes back to keep-alive pool.
+  // Streams shall be disconnected instead.
+  public static void release(@NonNull HttpURLConnection httpURLConnection) {
+    try (InputStream inputStream = (httpURLConnection.getResponseCode() < 400) ?
+      httpURLConnection.getInputStream() : httpURLConnection.getErrorStream()) {
+      if ((inputStream != null) && (inputStream.skip(DRAIN_MAX) >= DRAIN_MAX)) {
+        httpURLConnection.disconnect();
+      }
+    } catch (IOException iOException) {
+      httpURLConnection.disconnect();
+    }
+  }
+
   public interface HttpURLConnectionConsumer {
     void accept(@NonNull HttpURLConnection httpURLConnection) throws IOException;
   }
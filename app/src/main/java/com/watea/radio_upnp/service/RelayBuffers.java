@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.Vector;
+
+// Buffers used by a streaming session, reused from one session to another
+final class RelayBuffers {
+  static final int BUFFER_SIZE = 8192;
+  static final int METADATA_MAX = 256;
+  private static final int POOL_MAX = 4;
+  private static final List<RelayBuffers> pool = new Vector<>();
+  @NonNull
+  final byte[] audio = new byte[BUFFER_SIZE];
+  @NonNull
+  final byte[] metadata = new byte[METADATA_MAX];
+
+  private RelayBuffers() {
+  }
+
+  @NonNull
+  static RelayBuffers take() {
+    synchronized (pool) {
+      return pool.isEmpty() ? new RelayBuffers() : pool.remove(pool.size() - 1);
+    }
+  }
+
+  void release() {
+    synchronized (pool) {
+      if (pool.size() < POOL_MAX) {
+        pool.add(this);
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// In-memory cache of URL resolutions (redirections, playlists), with expiry.
+// Users shall remove an entry when the resolved URL fails.
+public class ResolutionCache {
+  private static final int ENTRIES_MAX = 100;
+  private final long ttl; // ms
+  // Access ordered, eldest is least recently used
+  private final Map<String, Resolution> resolutions =
+    new LinkedHashMap<String, Resolution>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Entry<String, Resolution> eldest) {
+        return (size() > ENTRIES_MAX);
+      }
+    };
+
+  public ResolutionCache(long ttl) {
+    this.ttl = ttl;
+  }
+
+  // Null if unknown or expired
+  @Nullable
+  public synchronized URL get(@NonNull URL uRL) {
+    final String key = uRL.toString();
+    final Resolution resolution = resolutions.get(key);
+    if (resolution == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - resolution.time > ttl) {
+      resolutions.remove(key);
+      return null;
+    }
+    return resolution.target;
+  }
+
+  public synchronized void put(@NonNull URL uRL, @NonNull URL target) {
+    resolutions.put(uRL.toString(), new Resolution(target));
+  }
+
+  public synchronized void remove(@NonNull URL uRL) {
+    resolutions.remove(uRL.toString());
+  }
+
+  private static class Resolution {
+    @NonNull
+    private final URL target;
+    private final long time = System.currentTimeMillis();
+
+    private Resolution(@NonNull URL target) {
+      this.target = target;
+    }
+  }
+}
\ No newline at end of file
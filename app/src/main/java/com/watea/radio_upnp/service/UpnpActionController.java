@@ -46,17 +46,22 @@ import java.util.Vector;
 public class UpnpActionController {
   @NonNull
   private final AndroidUpnpService androidUpnpService;
-  private final Map<Radio, String> contentTypes = new Hashtable<>();
+  @NonNull
+  private final ProbeCache probeCache;
   private final Map<Device<?, ?, ?>, List<String>> protocolInfos = new Hashtable<>();
   private final List<UpnpAction> upnpActions = new Vector<>();
 
-  public UpnpActionController(@NonNull AndroidUpnpService androidUpnpService) {
+  public UpnpActionController(
+    @NonNull AndroidUpnpService androidUpnpService, @NonNull ProbeCache probeCache) {
     this.androidUpnpService = androidUpnpService;
+    this.probeCache = probeCache;
   }
 
+  // Last known value, may be stale
   @Nullable
   public String getContentType(@NonNull Radio radio) {
-    return contentTypes.get(radio);
+    final ProbeCache.Probe probe = probeCache.get(radio.getURL());
+    return (probe == null) ? null : probe.getContentType();
   }
 
   @Nullable
@@ -64,16 +69,13 @@ public class UpnpActionController {
     return protocolInfos.get(device);
   }
 
+  // Blocking
   public void fetchContentType(@NonNull Radio radio) {
-    final String contentType = new RadioURL(radio.getURL()).getStreamContentType();
-    if (contentType != null) {
-      contentTypes.put(radio, contentType);
-    }
+    probeCache.probe(radio.getURL());
   }
 
   public synchronized void release(boolean actionsOnly) {
     if (!actionsOnly) {
-      contentTypes.clear();
       protocolInfos.clear();
     }
     upnpActions.clear();
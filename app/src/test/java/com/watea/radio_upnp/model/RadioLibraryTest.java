@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.URL;
+
+// Activity and service each open a library on the same database
+@RunWith(RobolectricTestRunner.class)
+public class RadioLibraryTest {
+  private RadioLibrary activityLibrary;
+  private RadioLibrary serviceLibrary;
+
+  @Before
+  public void setUp() {
+    final Context context = ApplicationProvider.getApplicationContext();
+    activityLibrary = new RadioLibrary(context);
+    serviceLibrary = new RadioLibrary(context);
+  }
+
+  @After
+  public void tearDown() {
+    activityLibrary.close();
+    serviceLibrary.close();
+  }
+
+  @Test
+  public void updateThroughOneLibraryIsReadThroughOther() throws Exception {
+    final Long radioId = add("Before");
+    // Radio is now cached
+    final Radio radio = serviceLibrary.getFrom(radioId);
+    assertNotNull(radio);
+    assertEquals("Before", radio.getName());
+    final ContentValues contentValues = new ContentValues();
+    contentValues.put(RadioSQLContract.Columns.COLUMN_NAME, "After");
+    contentValues.put(RadioSQLContract.Columns.COLUMN_URL, "http://after.test/stream");
+    assertTrue(activityLibrary.updateFrom(radioId, contentValues));
+    final Radio updatedRadio = serviceLibrary.getFrom(radioId);
+    assertNotNull(updatedRadio);
+    assertEquals("After", updatedRadio.getName());
+    assertEquals("http://after.test/stream", updatedRadio.getURL().toString());
+  }
+
+  @Test
+  public void deleteThroughOneLibraryIsReadThroughOther() throws Exception {
+    final Long radioId = add("Deleted");
+    assertNotNull(serviceLibrary.getFrom(radioId));
+    assertTrue(activityLibrary.deleteFrom(radioId));
+    assertNull(serviceLibrary.getFrom(radioId));
+  }
+
+  @Test
+  public void editedRadioIsNotShared() throws Exception {
+    final Long radioId = add("Cached");
+    final Radio radio = serviceLibrary.getFrom(radioId);
+    assertNotNull(radio);
+    // Edit not stored, as when icon storage fails
+    radio.setName("Edited");
+    final Radio cachedRadio = activityLibrary.getFrom(radioId);
+    assertNotNull(cachedRadio);
+    assertEquals("Cached", cachedRadio.getName());
+  }
+
+  private Long add(String name) throws Exception {
+    final Radio radio = new Radio(
+      name,
+      new URL("http://before.test/stream"),
+      null,
+      false,
+      Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+    assertTrue(activityLibrary.add(radio));
+    return radio.getId();
+  }
+}
\ No newline at end of file
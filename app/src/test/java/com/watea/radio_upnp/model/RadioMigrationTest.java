@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+// Database created by first version of the application, upgraded to current one
+@RunWith(RobolectricTestRunner.class)
+public class RadioMigrationTest {
+  private static final String DATABASE_NAME = "Radio.db";
+  private static final String SQL_CREATE_ENTRIES_V1 =
+    "CREATE TABLE radio (" +
+      "_id INTEGER PRIMARY KEY," +
+      "name TEXT," +
+      "icon TEXT," +
+      "type TEXT," +
+      "language TEXT," +
+      "url TEXT," +
+      "webSite TEXT," +
+      "quality TEXT," +
+      "isPreferred TEXT," +
+      "position INTEGER)";
+  // isPreferred as stored by version 1
+  private static final List<String> IS_PREFERRED_V1 = Arrays.asList("true", "false", "true");
+  private Context context;
+  private File databaseFile;
+
+  @Before
+  public void setUp() {
+    context = ApplicationProvider.getApplicationContext();
+    databaseFile = context.getDatabasePath(DATABASE_NAME);
+    assertTrue(databaseFile.getParentFile().isDirectory() || databaseFile.getParentFile().mkdirs());
+    try (SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(databaseFile, null)) {
+      database.execSQL(SQL_CREATE_ENTRIES_V1);
+      for (int position = 0; position < IS_PREFERRED_V1.size(); position++) {
+        final ContentValues contentValues = new ContentValues();
+        contentValues.put("name", "Radio" + position);
+        contentValues.put("icon", "");
+        contentValues.put("type", Radio.Type.MISC.toString());
+        contentValues.put("language", Radio.Language.OTHER.toString());
+        contentValues.put("url", "http://radio" + position + ".test/stream");
+        contentValues.put("quality", Radio.Quality.MEDIUM.toString());
+        contentValues.put("isPreferred", IS_PREFERRED_V1.get(position));
+        contentValues.put("position", position);
+        assertTrue(database.insert("radio", null, contentValues) >= 0);
+      }
+      database.setVersion(1);
+    }
+  }
+
+  @Test
+  public void upgradeKeepsRadios() throws Exception {
+    final RadioLibrary radioLibrary = new RadioLibrary(context);
+    try {
+      final List<Long> radioIds = radioLibrary.getAllRadioIds();
+      assertEquals(IS_PREFERRED_V1.size(), radioIds.size());
+      for (int position = 0; position < radioIds.size(); position++) {
+        final Radio radio = radioLibrary.getFrom(radioIds.get(position));
+        assertNotNull(radio);
+        assertEquals("Radio" + position, radio.getName());
+        assertEquals(Boolean.valueOf(IS_PREFERRED_V1.get(position)), radio.isPreferred());
+      }
+      assertEquals(2, radioLibrary.getPreferredRadioIds().size());
+    } finally {
+      radioLibrary.close();
+    }
+    try (SQLiteDatabase database = SQLiteDatabase.openDatabase(
+      databaseFile.getPath(), null, SQLiteDatabase.OPEN_READONLY)) {
+      assertEquals(RadioSQLContract.DATABASE_VERSION, database.getVersion());
+      try (Cursor cursor = database.rawQuery(
+        "SELECT isPreferred, position, typeof(isPreferred) FROM radio ORDER BY _id", null)) {
+        assertEquals(IS_PREFERRED_V1.size(), cursor.getCount());
+        while (cursor.moveToNext()) {
+          final int position = cursor.getPosition();
+          assertEquals(
+            RadioSQLContract.toInteger(Boolean.parseBoolean(IS_PREFERRED_V1.get(position))),
+            cursor.getInt(0));
+          assertEquals(position * RadioSQLContract.POSITION_GAP, cursor.getInt(1));
+          assertEquals("integer", cursor.getString(2));
+        }
+      }
+      assertTrue(hasIndex(database, RadioSQLContract.Columns.INDEX_POSITION));
+      assertTrue(hasIndex(database, RadioSQLContract.Columns.INDEX_PREFERRED));
+    }
+  }
+
+  private boolean hasIndex(@NonNull SQLiteDatabase database, @NonNull String name) {
+    try (Cursor cursor = database.rawQuery(
+      "SELECT name FROM sqlite_master WHERE type = 'index' AND name = ?", new String[]{name})) {
+      return cursor.moveToFirst();
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@RunWith(RobolectricTestRunner.class)
+public class IcyMetadataParserTest {
+  // ICY metadata length is coded on one byte, by 16 bytes chunks
+  private static final int CAPACITY = 255 * 16;
+  // Former parsing, for benchmark
+  private static final Pattern PATTERN_ICY = Pattern.compile(".*StreamTitle='([^;]*)';.*");
+  private static final int BENCHMARK_BLOCKS = 100000;
+  // Non ASCII titles; dash is not in Latin-1
+  private static final String UTF8_TITLE = "Fran\u00e7oise Hardy \u2013 \u00c9t\u00e9";
+  private static final String LATIN1_TITLE = "Fran\u00e7oise Hardy - \u00c9t\u00e9";
+
+  // Block as sent by server: zero padded to a multiple of 16
+  @NonNull
+  private static byte[] getBlock(@NonNull byte[] content) {
+    return Arrays.copyOf(content, (content.length + 15) / 16 * 16);
+  }
+
+  @NonNull
+  private static byte[] getBlock(@NonNull String content, @NonNull Charset charset) {
+    return getBlock(content.getBytes(charset));
+  }
+
+  @NonNull
+  private static IcyMetadataParser getParser(@NonNull Charset charset) {
+    return new IcyMetadataParser(charset.newDecoder(), CAPACITY);
+  }
+
+  @Test
+  public void titleAndUrlAreParsed() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block =
+      getBlock("StreamTitle='Artist - Song';StreamUrl='http://a.test/';", StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertEquals("Artist - Song", icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+    assertEquals("http://a.test/", icyMetadataParser.get(IcyMetadataParser.STREAM_URL));
+  }
+
+  @Test
+  public void zeroPaddingEndsBlock() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block = Arrays.copyOf("StreamTitle='Song';".getBytes(StandardCharsets.UTF_8), 64);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertEquals("Song", icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+  }
+
+  @Test
+  public void truncatedValueIsIgnored() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block = "StreamUrl='http://a.test/';StreamTitle='Art"
+      .getBytes(StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertEquals("http://a.test/", icyMetadataParser.get(IcyMetadataParser.STREAM_URL));
+    assertNull(icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+  }
+
+  @Test
+  public void truncatedValueEndingWithQuoteIsIgnored() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block = "StreamTitle='Rock'".getBytes(StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertNull(icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+  }
+
+  @Test
+  public void utf8TitleIsDecoded() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block = getBlock("StreamTitle='" + UTF8_TITLE + "';", StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertEquals(UTF8_TITLE, icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+  }
+
+  @Test
+  public void latin1TitleIsDecoded() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.ISO_8859_1);
+    final byte[] block =
+      getBlock("StreamTitle='" + LATIN1_TITLE + "';", StandardCharsets.ISO_8859_1);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertEquals(LATIN1_TITLE, icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+  }
+
+  @Test
+  public void undecodableValueIsSkipped() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block = getBlock(
+      "StreamTitle='" + LATIN1_TITLE + "';StreamUrl='http://a.test/';",
+      StandardCharsets.ISO_8859_1);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertNull(icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+    assertEquals("http://a.test/", icyMetadataParser.get(IcyMetadataParser.STREAM_URL));
+  }
+
+  @Test
+  public void quoteInValueIsKept() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block =
+      getBlock("StreamTitle='Guns N' Roses - Don't Cry';StreamUrl='';", StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertEquals(
+      "Guns N' Roses - Don't Cry", icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+    assertEquals("", icyMetadataParser.get(IcyMetadataParser.STREAM_URL));
+  }
+
+  @Test
+  public void semicolonInKeySkipsEntry() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block = getBlock("Bad;StreamTitle='Song';", StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertEquals("Song", icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+    assertNull(icyMetadataParser.get("Bad;StreamTitle"));
+  }
+
+  @Test
+  public void unquotedValueSkipsEntry() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block = getBlock("Bad=1;StreamTitle='Song';", StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertNull(icyMetadataParser.get("Bad"));
+    assertEquals("Song", icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+  }
+
+  @Test
+  public void sameBlockIsNotParsedAgain() {
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final byte[] block = getBlock("StreamTitle='Song';", StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    // Same content, other array
+    assertFalse(icyMetadataParser.parse(block.clone(), block.length));
+    assertEquals("Song", icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+    final byte[] other = getBlock("StreamTitle='Other';", StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(other, other.length));
+    assertEquals("Other", icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+    // Same as former, but not as previous
+    assertTrue(icyMetadataParser.parse(block, block.length));
+  }
+
+  @Test
+  public void blockLargerThanCapacityIsParsed() {
+    final IcyMetadataParser icyMetadataParser =
+      new IcyMetadataParser(StandardCharsets.UTF_8.newDecoder(), 16);
+    final byte[] block = getBlock("StreamTitle='A rather long title';", StandardCharsets.UTF_8);
+    assertTrue(icyMetadataParser.parse(block, block.length));
+    assertEquals("A rather long title", icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE));
+    // Not kept, so parsed again
+    assertTrue(icyMetadataParser.parse(block, block.length));
+  }
+
+  // Compares with former regex on decoded block, results shall be the same.
+  // Mostly same blocks, as a title is repeated for the duration of a song.
+  @Ignore("Benchmark, run manually")
+  @Test
+  public void benchmarkAgainstRegex() throws Exception {
+    final byte[][] blocks = {
+      getBlock("StreamTitle='Artist - First song';StreamUrl='';", StandardCharsets.UTF_8),
+      getBlock("StreamTitle='Artist - Second song';StreamUrl='';", StandardCharsets.UTF_8)};
+    final IcyMetadataParser icyMetadataParser = getParser(StandardCharsets.UTF_8);
+    final CharsetDecoder charsetDecoder = StandardCharsets.UTF_8.newDecoder();
+    String parserTitle = null;
+    String regexTitle = null;
+    long parserTime = 0;
+    long regexTime = 0;
+    // Warm up, then measure
+    for (int run = 0; run < 2; run++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < BENCHMARK_BLOCKS; i++) {
+        final byte[] block = blocks[i / 1000 % 2];
+        if (icyMetadataParser.parse(block, block.length)) {
+          parserTitle = icyMetadataParser.get(IcyMetadataParser.STREAM_TITLE);
+        }
+      }
+      parserTime = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < BENCHMARK_BLOCKS; i++) {
+        final byte[] block = blocks[i / 1000 % 2];
+        final CharBuffer metadata =
+          charsetDecoder.decode(ByteBuffer.wrap(block, 0, block.length));
+        final Matcher matcher = PATTERN_ICY.matcher(metadata);
+        if (matcher.find()) {
+          regexTitle = matcher.group(1);
+        }
+      }
+      regexTime = System.nanoTime() - start;
+    }
+    assertEquals(regexTitle, parserTitle);
+    assertTrue(
+      "IcyMetadataParser|regex (ms): " + parserTime / 1000000 + "|" + regexTime / 1000000,
+      parserTime < regexTime);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PausedSessionsTest {
+  private static final int SESSIONS = 4;
+  private static final int CYCLES = 500;
+  private static final long TIMEOUT = 5; // s
+  private ExecutorService executor;
+  // Ends running sessions
+  private volatile boolean isStopped = false;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(SESSIONS);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    isStopped = true;
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void parkRunsAtOnceIfControllerIsNotPaused() {
+    final List<String> runs = new Vector<>();
+    final PausedSessions pausedSessions = new PausedSessions(Runnable::run);
+    final TestController controller = new TestController();
+    pausedSessions.setController(controller);
+    assertFalse(pausedSessions.park(controller, () -> runs.add("session")));
+    assertEquals(1, runs.size());
+  }
+
+  @Test
+  public void parkRunsAtOnceIfControllerIsReplaced() {
+    final List<String> runs = new Vector<>();
+    final PausedSessions pausedSessions = new PausedSessions(Runnable::run);
+    final TestController controller = new TestController();
+    controller.isPaused = true;
+    pausedSessions.setController(new TestController());
+    assertFalse(pausedSessions.park(controller, () -> runs.add("session")));
+    assertEquals(1, runs.size());
+  }
+
+  @Test
+  public void resumeRunsOnlySessionsOfController() {
+    final List<String> runs = new Vector<>();
+    final PausedSessions pausedSessions = new PausedSessions(Runnable::run);
+    final TestController controller = new TestController();
+    controller.isPaused = true;
+    pausedSessions.setController(controller);
+    assertTrue(pausedSessions.park(controller, () -> runs.add("first")));
+    assertTrue(pausedSessions.park(controller, () -> runs.add("second")));
+    pausedSessions.resume(new TestController());
+    assertTrue(runs.isEmpty());
+    controller.isPaused = false;
+    pausedSessions.resume(controller);
+    assertEquals(2, runs.size());
+    // Already run
+    pausedSessions.resume(controller);
+    assertEquals(2, runs.size());
+  }
+
+  @Test
+  public void setControllerRunsFormerSessions() {
+    final List<String> runs = new Vector<>();
+    final PausedSessions pausedSessions = new PausedSessions(Runnable::run);
+    final TestController controller = new TestController();
+    controller.isPaused = true;
+    pausedSessions.setController(controller);
+    assertTrue(pausedSessions.park(controller, () -> runs.add("session")));
+    pausedSessions.setController(null);
+    assertEquals(1, runs.size());
+  }
+
+  // Sessions keep running and parking while controller is paused and resumed.
+  // After each resume, every session must run again: none is lost.
+  @Test
+  public void noSessionIsLostOnPauseResume() throws InterruptedException {
+    final PausedSessions pausedSessions = new PausedSessions(executor);
+    final TestController controller = new TestController();
+    final AtomicInteger cycle = new AtomicInteger();
+    final CountDownLatch[] latches = new CountDownLatch[CYCLES + 1];
+    latches[0] = new CountDownLatch(SESSIONS);
+    pausedSessions.setController(controller);
+    for (int i = 0; i < SESSIONS; i++) {
+      executor.execute(new TestSession(pausedSessions, controller, cycle, latches));
+    }
+    assertTrue(latches[0].await(TIMEOUT, TimeUnit.SECONDS));
+    for (int i = 1; i <= CYCLES; i++) {
+      controller.isPaused = true;
+      Thread.yield();
+      latches[i] = new CountDownLatch(SESSIONS);
+      cycle.set(i);
+      controller.isPaused = false;
+      pausedSessions.resume(controller);
+      assertTrue("Session lost on cycle " + i, latches[i].await(TIMEOUT, TimeUnit.SECONDS));
+    }
+  }
+
+  private static class TestController implements RadioHandler.Controller {
+    private volatile boolean isPaused = false;
+
+    // Yields, to widen the race between session check and resume
+    @Override
+    public boolean isPaused() {
+      final boolean result = isPaused;
+      Thread.yield();
+      return result;
+    }
+  }
+
+  // Parks as StreamingSession does, else tells its cycle and goes on streaming
+  private class TestSession implements Runnable {
+    @NonNull
+    private final PausedSessions pausedSessions;
+    @NonNull
+    private final TestController controller;
+    @NonNull
+    private final AtomicInteger cycle;
+    @NonNull
+    private final CountDownLatch[] latches;
+    private int lastCycle = -1;
+
+    private TestSession(
+      @NonNull PausedSessions pausedSessions,
+      @NonNull TestController controller,
+      @NonNull AtomicInteger cycle,
+      @NonNull CountDownLatch[] latches) {
+      this.pausedSessions = pausedSessions;
+      this.controller = controller;
+      this.cycle = cycle;
+      this.latches = latches;
+    }
+
+    @Override
+    public void run() {
+      while (!isStopped) {
+        if (controller.isPaused()) {
+          pausedSessions.park(controller, this);
+          return;
+        }
+        final int currentCycle = cycle.get();
+        if (currentCycle != lastCycle) {
+          lastCycle = currentCycle;
+          latches[currentCycle].countDown();
+        }
+      }
+    }
+  }
+}
\ No newline at end of file
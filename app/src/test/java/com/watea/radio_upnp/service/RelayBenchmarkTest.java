@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2018. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+// Relay of an ICY stream: former byte loop against BroadcastHub block loop.
+// Loops are copied here, as BroadcastHub relays to its subscribers.
+public class RelayBenchmarkTest {
+  private static final int METADATA_OFFSET = 16000;
+  // Metadata every METADATA_PERIOD blocks, else empty metadata
+  private static final int METADATA_PERIOD = 10;
+  private static final byte[] METADATA = Arrays.copyOf(
+    "StreamTitle='Artist - Some song title';".getBytes(StandardCharsets.UTF_8), 48);
+  private static final int BLOCKS = 100;
+  // About 32 MB
+  private static final int BENCHMARK_BLOCKS = 2000;
+
+  // Audio with metadata blocks inserted every METADATA_OFFSET bytes
+  @NonNull
+  private static byte[] getStream(@NonNull byte[] audio) {
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (int block = 0; block < audio.length / METADATA_OFFSET; block++) {
+      stream.write(audio, block * METADATA_OFFSET, METADATA_OFFSET);
+      if (block % METADATA_PERIOD == 0) {
+        stream.write(METADATA.length / 16);
+        stream.write(METADATA, 0, METADATA.length);
+      } else {
+        stream.write(0);
+      }
+    }
+    return stream.toByteArray();
+  }
+
+  @NonNull
+  private static byte[] getAudio(int blocks) {
+    final byte[] audio = new byte[blocks * METADATA_OFFSET];
+    new Random(1).nextBytes(audio);
+    return audio;
+  }
+
+  // Former relay, one byte per read
+  private static void relayByBytes(
+    @NonNull InputStream inputStream, @NonNull OutputStream outputStream) throws IOException {
+    final byte[] buffer = new byte[1];
+    int metadataBlockBytesRead = 0;
+    int metadataSize = 0;
+    while (inputStream.read(buffer) > 0) {
+      if (++metadataBlockBytesRead <= METADATA_OFFSET) {
+        outputStream.write(buffer);
+      } else {
+        final int index = metadataBlockBytesRead - METADATA_OFFSET - 1;
+        if (index == 0) {
+          metadataSize = (buffer[0] & 0xFF) * 16;
+        }
+        if (index == metadataSize) {
+          metadataBlockBytesRead = 0;
+        }
+      }
+    }
+  }
+
+  // As BroadcastHub.relay(), with RelayBuffers sizes
+  private static void relayByBlocks(
+    @NonNull InputStream inputStream, @NonNull OutputStream outputStream) throws IOException {
+    final byte[] buffer = new byte[RelayBuffers.BUFFER_SIZE];
+    final byte[] metadata = new byte[RelayBuffers.METADATA_MAX];
+    int audioBytesLeft = METADATA_OFFSET;
+    while (true) {
+      final int readResult =
+        inputStream.read(buffer, 0, Math.min(buffer.length, audioBytesLeft));
+      if (readResult < 0) {
+        return;
+      }
+      outputStream.write(buffer, 0, readResult);
+      if ((audioBytesLeft -= readResult) == 0) {
+        final int sizeByte = inputStream.read();
+        if (sizeByte < 0) {
+          return;
+        }
+        int metadataLeft = sizeByte * 16;
+        while (metadataLeft > 0) {
+          final int metadataResult =
+            inputStream.read(metadata, 0, Math.min(metadata.length, metadataLeft));
+          if (metadataResult < 0) {
+            return;
+          }
+          metadataLeft -= metadataResult;
+        }
+        audioBytesLeft = METADATA_OFFSET;
+      }
+    }
+  }
+
+  @NonNull
+  private static InputStream getInputStream(@NonNull byte[] stream) {
+    return new BufferedInputStream(new ByteArrayInputStream(stream));
+  }
+
+  @NonNull
+  private static OutputStream getOutputStream(int size) {
+    return new BufferedOutputStream(new ByteArrayOutputStream(size), RelayBuffers.BUFFER_SIZE);
+  }
+
+  @Test
+  public void relaysKeepAudioOnly() throws IOException {
+    final byte[] audio = getAudio(BLOCKS);
+    final byte[] stream = getStream(audio);
+    final ByteArrayOutputStream byBytes = new ByteArrayOutputStream();
+    relayByBytes(getInputStream(stream), byBytes);
+    final ByteArrayOutputStream byBlocks = new ByteArrayOutputStream();
+    relayByBlocks(getInputStream(stream), byBlocks);
+    assertArrayEquals(audio, byBytes.toByteArray());
+    assertArrayEquals(audio, byBlocks.toByteArray());
+  }
+
+  // Both sides are buffered, as relay reads from HttpURLConnection and writes to Jetty.
+  // Block loop ran about 60 times faster on OpenJDK 17.
+  @Ignore("Benchmark, run manually")
+  @Test
+  public void benchmarkAgainstByteLoop() throws IOException {
+    final byte[] stream = getStream(getAudio(BENCHMARK_BLOCKS));
+    long bytesTime = 0;
+    long blocksTime = 0;
+    // Warm up, then measure
+    for (int run = 0; run < 2; run++) {
+      long start = System.nanoTime();
+      relayByBytes(getInputStream(stream), getOutputStream(stream.length));
+      bytesTime = System.nanoTime() - start;
+      start = System.nanoTime();
+      relayByBlocks(getInputStream(stream), getOutputStream(stream.length));
+      blocksTime = System.nanoTime() - start;
+    }
+    assertTrue(
+      "Byte loop|block loop (ms): " + bytesTime / 1000000 + "|" + blocksTime / 1000000,
+      blocksTime < bytesTime);
+  }
+}
\ No newline at end of file